@@ -0,0 +1,96 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.MenuItem;
+import com.foodregistry.Money;
+import com.foodregistry.ReceiptWriter;
+import com.foodregistry.Restaurant;
+import com.foodregistry.security.AuditLog;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Scratch data directories with a generated menu, so every benchmark runs
+ * against a restaurant of a known size and never touches the working directory.
+ */
+final class BenchmarkData {
+    static {
+        // One console line per order would dominate the payment benchmarks
+        if (System.getProperty(AuditLog.CONSOLE_PROPERTY) == null) {
+            System.setProperty(AuditLog.CONSOLE_PROPERTY, "false");
+        }
+    }
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Codes A..Z for the first 26 items, then X26, X27, ...
+     */
+    static String code(int index) {
+        return index < 26 ? String.valueOf((char) ('A' + index)) : "X" + index;
+    }
+
+    static String[] codes(int menuSize) {
+        String[] codes = new String[menuSize];
+        for (int i = 0; i < menuSize; i++) codes[i] = code(i);
+        return codes;
+    }
+
+    static List<MenuItem> menu(int menuSize) {
+        List<MenuItem> menu = new ArrayList<>(menuSize);
+        for (int i = 0; i < menuSize; i++) {
+            menu.add(new MenuItem(code(i), "Item " + i, price(i)));
+        }
+        return menu;
+    }
+
+    /**
+     * @return A new directory holding a menu.txt of the given size; users.txt
+     *         is created with the default accounts when the restaurant opens.
+     */
+    static Path createDataDir(int menuSize) throws IOException {
+        Path dir = Files.createTempDirectory("foodregistry-bench");
+        StringBuilder sb = new StringBuilder(menuSize * 24);
+        for (int i = 0; i < menuSize; i++) {
+            Money.append(sb.append(code(i)).append(",Item ").append(i).append(','), price(i)).append('\n');
+        }
+        Files.write(dir.resolve("menu.txt"), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return dir;
+    }
+
+    static Restaurant open(Path dir, boolean realReceipts) {
+        return realReceipts ? new Restaurant(dir) : new Restaurant(dir, new DiscardingReceiptWriter(dir));
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static long price(int index) {
+        return 300 + (index % 20) * 50;
+    }
+
+    /**
+     * Stands in for receipt I/O: rendering still happens, writing doesn't.
+     */
+    private static final class DiscardingReceiptWriter extends ReceiptWriter {
+        DiscardingReceiptWriter(Path dir) {
+            super(dir);
+        }
+
+        @Override
+        public void submit(int orderNumber, byte[] bytes, long timestampMillis) {
+        }
+    }
+}
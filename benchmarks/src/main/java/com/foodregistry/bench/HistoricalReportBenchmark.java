@@ -0,0 +1,91 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.MenuSnapshot;
+import com.foodregistry.Order;
+import com.foodregistry.SalesRollups;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A year-to-date sales history query over 365 rolled-up days in which every
+ * menu item sold. cold opens the rollups afresh, so every day file is read;
+ * warm queries rollups that have already read them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoricalReportBenchmark {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final LocalDate FIRST = LocalDate.of(2025, 1, 1);
+    private static final LocalDate LAST = LocalDate.of(2025, 12, 31);
+
+    @Param({"5", "100", "1000"})
+    int menuSize;
+
+    private Path dir;
+    private SalesRollups warm;
+    private SalesRollups cold;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchmarkData.createDataDir(0);
+        MenuSnapshot menu = new MenuSnapshot(1, BenchmarkData.menu(menuSize));
+        SalesRollups rollups = new SalesRollups(dir, UTC);
+        for (LocalDate day = FIRST; !day.isAfter(LAST); day = day.plusDays(1)) {
+            long noon = day.atTime(12, 0).atZone(UTC).toInstant().toEpochMilli();
+            // A handful of orders that between them sell every item
+            for (int first = 0; first < menuSize; first += 10) {
+                Order order = new Order(menu);
+                for (int i = first; i < Math.min(menuSize, first + 10); i++) order.addItem(i, 1 + i % 3);
+                order.calculateTotals();
+                rollups.recordPayment(noon, order);
+            }
+        }
+        rollups.rollUpBefore(LAST.plusDays(1));
+        warm = new SalesRollups(dir, UTC);
+        warm.query(FIRST, LAST, null);
+    }
+
+    @Setup(Level.Invocation)
+    public void reopen() throws Exception {
+        cold = new SalesRollups(dir, UTC);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public SalesRollups.Summary yearToDateCold() throws Exception {
+        return cold.query(FIRST, LAST, null);
+    }
+
+    @Benchmark
+    public SalesRollups.Summary yearToDateWarm() throws Exception {
+        return warm.query(FIRST, LAST, null);
+    }
+
+    @Benchmark
+    public SalesRollups.Summary yearToDateOneItem() throws Exception {
+        return warm.query(FIRST, LAST, BenchmarkData.code(0));
+    }
+}
@@ -0,0 +1,52 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.security.AuthenticationService;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Password check against the default accounts. Login doesn't depend on the
+ * menu, so this one has no menu size parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+    private Path dir;
+    private AuthenticationService auth;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkData.createDataDir(1);
+        auth = new AuthenticationService(dir.resolve("users.txt"));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public boolean login() {
+        return auth.login("cashier01", "cash123");
+    }
+
+    @Benchmark
+    public boolean loginRejected() {
+        return auth.login("cashier01", "wrong");
+    }
+}
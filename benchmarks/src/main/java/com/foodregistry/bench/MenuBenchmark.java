@@ -0,0 +1,64 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.MenuIndex;
+import com.foodregistry.Restaurant;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Item code lookup and the menu grid. Restaurant.findMenuItemByCode is a
+ * private wrapper over MenuIndex.find, so the index is measured directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuBenchmark {
+    @Param({"5", "100", "1000"})
+    int menuSize;
+
+    private Path dir;
+    private Restaurant restaurant;
+    private MenuIndex index;
+    private String[] codes;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkData.createDataDir(menuSize);
+        restaurant = BenchmarkData.open(dir, false);
+        index = MenuIndex.build(BenchmarkData.menu(menuSize));
+        codes = BenchmarkData.codes(menuSize);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        restaurant.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public int findMenuItemByCode() {
+        if (++next == codes.length) next = 0;
+        return index.find(codes[next]);
+    }
+
+    @Benchmark
+    public String getMenuDisplay() {
+        return restaurant.getMenuDisplay();
+    }
+}
@@ -0,0 +1,87 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.MenuCatalog;
+import com.foodregistry.Restaurant;
+import com.foodregistry.security.User;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Importing a head-office catalogue. parse is checking the CSV alone; import
+ * is the whole step a manager waits for: parse, check, publish the new menu
+ * version and rewrite menu.txt. Every third name is quoted with a comma in it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MenuImportBenchmark {
+    @Param({"10000", "100000"})
+    int items;
+
+    private byte[] csv;
+    private byte[] copy;
+    private Path dir;
+    private Restaurant restaurant;
+    private User manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder(items * 32).append("code,name,price\n");
+        for (int i = 0; i < items; i++) {
+            sb.append(BenchmarkData.code(i)).append(',');
+            if (i % 3 == 0) {
+                sb.append("\"Item ").append(i).append(", large\"");
+            } else {
+                sb.append("Item ").append(i);
+            }
+            sb.append(',').append(3 + i % 20).append('.').append(i % 2 == 0 ? "50" : "00").append('\n');
+        }
+        csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+        copy = new byte[csv.length];
+        dir = BenchmarkData.createDataDir(5);
+        restaurant = BenchmarkData.open(dir, false);
+        manager = restaurant.getAuthService().authenticate("manager01", "mgr123");
+    }
+
+    // Parsing unquotes in place, so each run gets a fresh copy
+    @Setup(Level.Invocation)
+    public void copy() {
+        System.arraycopy(csv, 0, copy, 0, csv.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        restaurant.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public MenuCatalog.Result parse() {
+        return MenuCatalog.parse(copy, copy.length);
+    }
+
+    @Benchmark
+    public MenuCatalog.Result importMenu() throws Exception {
+        MenuCatalog.Result result = restaurant.importMenu(manager, copy, copy.length);
+        if (!result.isValid()) throw new IllegalStateException(result.getErrors().toString());
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.MenuItem;
+import com.foodregistry.Order;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a five-line order and totalling it. Menus above
+ * Order.SPARSE_THRESHOLD items use sparse orders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+    @Param({"5", "100", "1000"})
+    int menuSize;
+
+    private List<MenuItem> menu;
+    private int[] lines;
+    private long[] prices;
+    private Order filled;
+
+    @Setup
+    public void setUp() {
+        menu = BenchmarkData.menu(menuSize);
+        lines = new int[5];
+        prices = new long[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = (int) ((long) i * menuSize / lines.length);
+            prices[i] = menu.get(lines[i]).getPriceCents();
+        }
+        filled = new Order(menuSize);
+        for (int line : lines) filled.addItem(line, 2);
+    }
+
+    @Benchmark
+    public Order addItem() {
+        Order order = new Order(menuSize);
+        for (int i = 0; i < lines.length; i++) {
+            order.addItem(lines[i], 2, prices[i]);
+        }
+        return order;
+    }
+
+    @Benchmark
+    public long calculateTotals() {
+        filled.calculateTotals(menu);
+        return filled.getTotalCents();
+    }
+}
@@ -0,0 +1,68 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.Restaurant;
+import com.foodregistry.Session;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A till checkout: two items added, then paid. With receipts=stubbed the
+ * receipt is rendered but not written; with receipts=real it goes through
+ * the receipt writer to disk. The journal is written either way. Each
+ * iteration starts from an empty data directory so history doesn't pile up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentBenchmark {
+    @Param({"5", "100", "1000"})
+    int menuSize;
+
+    @Param({"stubbed", "real"})
+    String receipts;
+
+    private Path dir;
+    private Restaurant restaurant;
+    private Session session;
+    private String[] codes;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        dir = BenchmarkData.createDataDir(menuSize);
+        restaurant = BenchmarkData.open(dir, "real".equals(receipts));
+        session = restaurant.getSessions().create();
+        session.setUser(restaurant.getAuthService().authenticate("cashier01", "cash123"));
+        codes = BenchmarkData.codes(menuSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        restaurant.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String processPayment() throws Exception {
+        if ((next += 2) >= codes.length) next = 0;
+        restaurant.processItemCode(session, codes[next], 1);
+        restaurant.processItemCode(session, codes[(next + 1) % codes.length], 2);
+        return restaurant.processPaymentCents(session, 100_000);
+    }
+}
@@ -0,0 +1,98 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.ReceiptArchive;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filing and reprinting receipts. filePerOrder is the previous layout, one
+ * ReceiptNo&lt;n&gt;.txt per order; append is the same receipt added to the
+ * day's segment (neither syncs). reprintClosed looks a receipt up in a closed
+ * day among a year of 2,000-order days, packed or not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptArchiveBenchmark {
+    private static final int DAYS = 365;
+    private static final int PER_DAY = 2000;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    @Param({"false", "true"})
+    boolean compress;
+
+    private Path dir;
+    private Path files;
+    private ReceiptArchive archive;
+    private byte[] receipt;
+    private int next;
+    private long now;
+    private int lookups;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            text.append("(N").append(i).append(") [RM 9.00] Nasi Lemak x 1 = RM 9.00\n");
+        }
+        receipt = text.append("Grand total: RM 59.40\nThank you and have a nice day ahead!\n")
+                .toString().getBytes(StandardCharsets.UTF_8);
+        dir = Files.createTempDirectory("bench-receipts");
+        files = Files.createDirectories(dir.resolve("files"));
+        archive = new ReceiptArchive(dir.resolve("archive"), compress, ZoneId.of("UTC"));
+        long start = System.currentTimeMillis() - DAYS * DAY_MILLIS;
+        for (int day = 0; day < DAYS; day++) {
+            for (int i = 0; i < PER_DAY; i++) {
+                archive.append(++next, receipt, start + day * DAY_MILLIS + i);
+            }
+        }
+        now = start + DAYS * DAY_MILLIS;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        archive.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Path filePerOrder() throws IOException {
+        return Files.write(files.resolve("ReceiptNo" + (next++ % 100_000) + ".txt"), receipt);
+    }
+
+    @Benchmark
+    public int append() throws IOException {
+        archive.append(++next, receipt, now);
+        return next;
+    }
+
+    @Benchmark
+    public byte[] reprintClosed() throws IOException {
+        lookups = (lookups + 7919) % ((DAYS - 1) * PER_DAY);
+        return archive.read(1 + lookups);
+    }
+}
@@ -0,0 +1,136 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.HtmlReceiptRenderer;
+import com.foodregistry.MenuItem;
+import com.foodregistry.MenuSnapshot;
+import com.foodregistry.Money;
+import com.foodregistry.Order;
+import com.foodregistry.Receipt;
+import com.foodregistry.ReceiptBuffer;
+import com.foodregistry.ReceiptRenderer;
+import com.foodregistry.TextReceiptRenderer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Both receipts for one checkout, as checkout produces them: the text copy
+ * as bytes for the receipt writer and the HTML copy as a String for the page.
+ * stringBuilder is the previous per-receipt StringBuilder rendering; renderers
+ * is the shared renderers with cached line prefixes and a reused buffer.
+ * Run with -prof gc to compare allocation per checkout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptBenchmark {
+    private static final String LINE = System.lineSeparator();
+    private static final String SEPARATOR = "====================================";
+
+    @Param({"2", "8"})
+    int lines;
+
+    private Order order;
+    private Receipt receipt;
+    private final ReceiptRenderer text = new TextReceiptRenderer();
+    private final ReceiptRenderer html = new HtmlReceiptRenderer();
+    private final ReceiptBuffer buffer = new ReceiptBuffer();
+
+    @Setup
+    public void setUp() {
+        MenuSnapshot menu = new MenuSnapshot(1, BenchmarkData.menu(100));
+        order = new Order(menu);
+        for (int i = 0; i < lines; i++) {
+            order.addItem(i * 7, 1 + i % 3);
+        }
+        order.calculateTotals();
+        receipt = new Receipt(order, 4242, 100_000);
+    }
+
+    @Benchmark
+    public int stringBuilder() {
+        byte[] saved = legacyText(order, 100_000, 4242).getBytes(StandardCharsets.UTF_8);
+        String shown = legacyHtml(order, 100_000, 4242);
+        return saved.length + shown.length();
+    }
+
+    @Benchmark
+    public int renderers() {
+        text.render(receipt, buffer.reset());
+        byte[] saved = buffer.toByteArray();
+        html.render(receipt, buffer.reset());
+        String shown = buffer.toString();
+        return saved.length + shown.length();
+    }
+
+    private static String legacyText(Order order, long amountPaid, int orderNumber) {
+        StringBuilder out = new StringBuilder(512);
+        String header = "= * === * === * === * === * ==";
+        out.append(header).append(LINE);
+        out.append("H & S Restaurant Meal Billing System").append(LINE);
+        out.append(header).append(LINE);
+        out.append(LINE);
+        out.append("Order: #").append(orderNumber).append(LINE);
+        out.append(LINE);
+        out.append("Items in bill:").append(LINE);
+        for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+            MenuItem item = order.getMenu().get(i);
+            int qty = order.getQuantity(i);
+            out.append('(').append(item.getSku()).append(") [RM ");
+            Money.append(out, item.getPriceCents()).append("] ").append(item.getName()).append(" × ").append(qty).append(" = RM ");
+            Money.append(out, item.getPriceCents() * qty).append(LINE);
+        }
+        long change = amountPaid - order.getTotalCents();
+        out.append(SEPARATOR).append(LINE);
+        Money.append(out.append(" Subtotal: RM "), order.getSubtotalCents()).append(LINE);
+        Money.append(out.append(" SST charge 10%: RM "), order.getSSTCents()).append(LINE);
+        Money.append(out.append(" Grand total: RM "), order.getTotalCents()).append(LINE);
+        out.append(SEPARATOR).append(LINE);
+        Money.append(out.append("Amount received: RM "), amountPaid).append(LINE);
+        if (change > 0) {
+            Money.append(out.append(" Change given: RM "), change).append(LINE);
+        }
+        out.append(SEPARATOR).append(LINE);
+        out.append("Thank you and have a nice day ahead!").append(LINE);
+        return out.toString();
+    }
+
+    private static String legacyHtml(Order order, long amountPaid, int orderNumber) {
+        StringBuilder sb = new StringBuilder(512);
+        long change = amountPaid - order.getTotalCents();
+        sb.append("<h3>Receipt Order: #").append(orderNumber).append("</h3>");
+        sb.append("<div class='receipt'>");
+        sb.append("Items in bill:<br>");
+        for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+            MenuItem item = order.getMenu().get(i);
+            int qty = order.getQuantity(i);
+            sb.append('(').append(item.getSku()).append(") [RM ");
+            Money.append(sb, item.getPriceCents()).append("] ").append(item.getName()).append(" x ").append(qty).append(" = RM ");
+            Money.append(sb, item.getPriceCents() * qty).append("<br>");
+        }
+        sb.append("<hr>");
+        Money.append(sb.append("Subtotal: RM "), order.getSubtotalCents()).append("<br>");
+        Money.append(sb.append("SST charge 10%: RM "), order.getSSTCents()).append("<br>");
+        Money.append(sb.append("Grand total: RM "), order.getTotalCents()).append("<br>");
+        sb.append("<hr>");
+        Money.append(sb.append("Amount received: RM "), amountPaid).append("<br>");
+        if (change > 0) {
+            Money.append(sb.append("Change given: RM "), change).append("<br>");
+        }
+        sb.append("<hr>Thank you and have a nice day ahead!</div>");
+        return sb.toString();
+    }
+}
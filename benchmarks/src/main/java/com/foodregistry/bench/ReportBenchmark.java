@@ -0,0 +1,67 @@
+package com.foodregistry.bench;
+
+import com.foodregistry.Restaurant;
+import com.foodregistry.Session;
+import com.foodregistry.security.User;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The first page of the daily report after a day of the given number of orders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"5", "100", "1000"})
+    int menuSize;
+
+    @Param({"100", "10000", "100000"})
+    int orders;
+
+    private Path dir;
+    private Restaurant restaurant;
+    private Session session;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkData.createDataDir(menuSize);
+        restaurant = BenchmarkData.open(dir, false);
+        User cashier = restaurant.getAuthService().authenticate("cashier01", "cash123");
+        String[] codes = BenchmarkData.codes(menuSize);
+        String[] line = new String[3];
+        int[] quantities = {1, 2, 1};
+        for (int i = 0; i < orders; i++) {
+            for (int j = 0; j < line.length; j++) line[j] = codes[(i * 7 + j * 13) % codes.length];
+            restaurant.processBatchOrder(cashier, line, quantities, 100_000);
+        }
+        session = restaurant.getSessions().create();
+        session.setUser(restaurant.getAuthService().authenticate("manager01", "mgr123"));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        restaurant.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String generateDailyReport() throws Exception {
+        return restaurant.generateDailyReport(session, 1, Restaurant.DEFAULT_REPORT_PAGE_SIZE);
+    }
+}
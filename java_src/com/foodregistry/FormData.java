@@ -0,0 +1,55 @@
+package com.foodregistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decoded fields of a URL-encoded form, in the order they were sent.
+ * A key may appear more than once.
+ */
+public class FormData {
+    private String[] keys = new String[8];
+    private String[] values = new String[8];
+    private int size;
+
+    void add(String key, String value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * @return The first value sent for the key, or null if there is none.
+     */
+    public String get(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) return values[i];
+        }
+        return null;
+    }
+
+    public String getOrDefault(String key, String fallback) {
+        String value = get(key);
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * @return Every value sent for the key, in order; empty if there are none.
+     */
+    public List<String> getAll(String key) {
+        List<String> all = new ArrayList<>(2);
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) all.add(values[i]);
+        }
+        return all;
+    }
+
+    public int size() {
+        return size;
+    }
+}
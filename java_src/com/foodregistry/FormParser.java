@@ -0,0 +1,125 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads application/x-www-form-urlencoded request bodies.
+ *
+ * The body is read in bulk into a pooled buffer, never past the size limit
+ * (-Dfoodregistry.form.maxbytes, default 64KB), and percent-decoded in place
+ * in a single pass, so each field costs only its final String. Values are
+ * decoded as UTF-8. A malformed escape is kept as literal text rather than
+ * dropping the field.
+ */
+public class FormParser {
+    public static final String MAX_BYTES_PROPERTY = "foodregistry.form.maxbytes";
+    private static final int DEFAULT_MAX_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 4096;
+    private static final ArrayBlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(64);
+
+    private final int maxBytes;
+
+    public FormParser() {
+        this(Integer.getInteger(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    public FormParser(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads and decodes a whole form body.
+     * @param in The request body.
+     * @param declaredLength The Content-Length, or -1 if not given.
+     * @throws RequestTooLargeException if the body is over the size limit.
+     */
+    public FormData parse(InputStream in, long declaredLength) throws IOException {
+        if (declaredLength > maxBytes) {
+            throw new RequestTooLargeException("Form body of " + declaredLength + " bytes exceeds " + maxBytes);
+        }
+        byte[] pooled = acquire();
+        byte[] buffer = pooled;
+        try {
+            int length = 0;
+            while (true) {
+                int limit = Math.min(buffer.length, maxBytes);
+                if (length == limit) {
+                    if (limit == maxBytes) {
+                        // Full at the limit: one more byte means the body is too large
+                        if (in.read() == -1) break;
+                        throw new RequestTooLargeException("Form body exceeds " + maxBytes + " bytes");
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(maxBytes, buffer.length * 2));
+                    limit = buffer.length;
+                }
+                int n = in.read(buffer, length, limit - length);
+                if (n < 0) break;
+                length += n;
+            }
+            return decode(buffer, 0, length);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Decodes a form body held in the array. The bytes are overwritten in the process.
+     */
+    public static FormData decode(byte[] data, int offset, int length) {
+        FormData form = new FormData();
+        int end = offset + length;
+        int start = offset;
+        while (start < end) {
+            int pairEnd = start;
+            while (pairEnd < end && data[pairEnd] != '&') pairEnd++;
+            if (pairEnd > start) {
+                int eq = start;
+                while (eq < pairEnd && data[eq] != '=') eq++;
+                String key = decodeField(data, start, eq);
+                String value = eq < pairEnd ? decodeField(data, eq + 1, pairEnd) : "";
+                if (!key.isEmpty()) form.add(key, value);
+            }
+            start = pairEnd + 1;
+        }
+        return form;
+    }
+
+    // Percent- and plus-decodes [start, end) in place (decoding only shrinks) and returns the UTF-8 text
+    private static String decodeField(byte[] data, int start, int end) {
+        int out = start;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '+') {
+                data[out++] = ' ';
+            } else if (b == '%' && hex(data, i + 1, end) >= 0 && hex(data, i + 2, end) >= 0) {
+                data[out++] = (byte) ((hex(data, i + 1, end) << 4) | hex(data, i + 2, end));
+                i += 2;
+            } else {
+                data[out++] = b;
+            }
+        }
+        return new String(data, start, out - start, StandardCharsets.UTF_8);
+    }
+
+    private static int hex(byte[] data, int i, int end) {
+        if (i >= end) return -1;
+        int c = data[i];
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static byte[] acquire() {
+        byte[] buffer = pool.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void release(byte[] buffer) {
+        pool.offer(buffer);
+    }
+}
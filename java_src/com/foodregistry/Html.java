@@ -0,0 +1,38 @@
+package com.foodregistry;
+
+/**
+ * Escapes text that didn't come from the code, such as menu names from an
+ * imported catalogue, before it goes into a page or an attribute value.
+ */
+public final class Html {
+    private Html() {}
+
+    public static String escape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (needsEscape(text.charAt(i))) return append(new StringBuilder(text.length() + 16), text).toString();
+        }
+        return text;
+    }
+
+    /**
+     * Appends the text escaped; most names need nothing and are copied as they are.
+     */
+    public static StringBuilder append(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '\'': sb.append("&#39;"); break;
+                case '"': sb.append("&quot;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb;
+    }
+
+    private static boolean needsEscape(char c) {
+        return c == '&' || c == '<' || c == '>' || c == '\'' || c == '"';
+    }
+}
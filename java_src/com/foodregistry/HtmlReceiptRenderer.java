@@ -0,0 +1,17 @@
+package com.foodregistry;
+
+/**
+ * The receipt shown on the till page after checkout.
+ */
+public final class HtmlReceiptRenderer extends ReceiptRenderer {
+    public HtmlReceiptRenderer() {
+        super("<h3>Receipt Order: #",
+              "</h3><div class='receipt'>Items in bill:<br>",
+              " x ", "", "<br>", "<hr>", "</div>");
+    }
+
+    @Override
+    protected String name(String name) {
+        return Html.escape(name);
+    }
+}
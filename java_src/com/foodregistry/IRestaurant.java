@@ -3,6 +3,9 @@ package com.foodregistry;
 import com.foodregistry.security.AuditLog;
 import com.foodregistry.security.AuthenticationService;
 import com.foodregistry.security.UnauthorizedException;
+import com.foodregistry.security.User;
+import java.io.IOException;
+import java.time.LocalDate;
 
 public interface IRestaurant {
     void processItemCode(char code, int quantity) throws UnauthorizedException;
@@ -16,6 +19,30 @@ public interface IRestaurant {
     void modifyMenuPrice(char code, float newPrice) throws UnauthorizedException;
     String processRefund(int orderNumber) throws UnauthorizedException;
     
+    // Per-till variants: permissions and the order come from the given session
+    void processItemCode(Session session, char code, int quantity) throws UnauthorizedException;
+    void processItemCode(Session session, String code, int quantity) throws UnauthorizedException;
+    String processPayment(Session session, float amount) throws UnauthorizedException;
+    String processPaymentCents(Session session, long amountCents) throws UnauthorizedException;
+    void clearOrder(Session session);
+    String generateDailyReport(Session session) throws UnauthorizedException;
+    String generateDailyReport(Session session, int page, int pageSize) throws UnauthorizedException;
+    String generateHistoricalReport(Session session, LocalDate from, LocalDate to, String sku) throws UnauthorizedException;
+    String getCurrentOrderDisplay(Session session);
+    void modifyMenuPrice(Session session, char code, float newPrice) throws UnauthorizedException;
+    void modifyMenuPrice(Session session, String code, float newPrice) throws UnauthorizedException;
+    // False if no item has the code
+    boolean modifyMenuPriceCents(Session session, String code, long newPriceCents) throws UnauthorizedException;
+    String processRefund(Session session, int orderNumber) throws UnauthorizedException;
+    // The text receipt as it was archived, or null if there is none
+    String reprintReceipt(Session session, int orderNumber) throws UnauthorizedException;
+
+    // Whole-order checkout for kiosks and integrations; no till session or HTML involved
+    OrderResult processBatchOrder(User user, String[] codes, int[] quantities, long amountPaidCents) throws UnauthorizedException;
+    // Replaces the whole menu from a CSV catalogue, only if every line is valid and menu.txt was written
+    MenuCatalog.Result importMenu(User user, byte[] csv, int length) throws UnauthorizedException, IOException;
+
     AuthenticationService getAuthService();
     AuditLog getAuditLog();
+    SessionStore getSessions();
 }
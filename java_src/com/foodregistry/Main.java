@@ -1,9 +1,13 @@
 package com.foodregistry;
 
+import com.foodregistry.security.AuditAction;
+import com.foodregistry.security.AuditEntry;
+import com.foodregistry.security.AuditLog;
 import com.foodregistry.security.Permission;
 import com.foodregistry.security.Role;
 import com.foodregistry.security.UnauthorizedException;
 import com.foodregistry.security.User;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
@@ -12,141 +16,645 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.net.URLDecoder;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
 
 public class Main {
     private static Restaurant restaurant;
-    private static String loginMessage = "";
+    private static OutletRegistry outlets;
+    private static final String OUTLET_PREFIX = "/outlet/";
+    private static final String SESSION_COOKIE = "FRSESSION";
+    private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     public static void main(String[] args) throws IOException {
         restaurant = new Restaurant();
-        HttpServer server = HttpServer.create(new InetSocketAddress(8000), 0);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (outlets != null) outlets.close();
+            restaurant.close();
+        }, "shutdown"));
+        ServerExecutors.Mode mode = ServerExecutors.configuredMode();
+        int threads = ServerExecutors.configuredThreads();
+        startServer(8000, ServerExecutors.create(mode, threads));
+        System.out.println("Server started on port 8000 (" + mode + (mode == ServerExecutors.Mode.SINGLE ? "" : ", " + threads + " threads") + ")");
+    }
+
+    /**
+     * Starts the HTTP server for the restaurant, with any outlets under /outlet/{id}/.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param executor The request executor, or null for the server's single dispatcher thread.
+     * @return The running server.
+     */
+    public static HttpServer startServer(int port, Executor executor) throws IOException {
+        if (restaurant == null) {
+            restaurant = new Restaurant();
+        }
+        if (outlets == null) {
+            outlets = new OutletRegistry((id, r) -> new OutletRoutes(r, OUTLET_PREFIX + id + "/"));
+            outlets.registerMetrics(restaurant.getMetrics());
+        }
+        // Without TCP_NODELAY small responses wait on delayed ACKs (~40ms per request)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         
-        server.createContext("/", new RootHandler());
-        server.createContext("/style.css", new StyleHandler());
-        server.createContext("/action", new ActionHandler());
+        restaurant.getMetrics().registerJvm();
+        server.createContext("/", new RootHandler(restaurant, "/")).getFilters().add(timed("root"));
+        server.createContext("/style.css", STYLE).getFilters().add(timed("static"));
+        server.createContext("/action", new ActionHandler(restaurant, "/")).getFilters().add(timed("action"));
+        server.createContext("/api/order", new OrderApiHandler(restaurant)).getFilters().add(timed("api_order"));
+        server.createContext("/api/menu", new MenuApiHandler(restaurant)).getFilters().add(timed("api_menu"));
+        server.createContext("/metrics", new MetricsHandler(restaurant)).getFilters().add(timed("metrics"));
+        server.createContext(OUTLET_PREFIX, new OutletHandler()).getFilters().add(timed("outlet"));
         
-        server.setExecutor(null);
-        System.out.println("Server started on port 8000");
+        server.setExecutor(executor);
         server.start();
+        return server;
+    }
+
+    /**
+     * Records how long each request to a context takes.
+     */
+    private static Filter timed(String handler) {
+        LatencyHistogram timer = restaurant.getMetrics().timer("foodregistry_http_request_seconds",
+            "handler=\"" + handler + "\"", "Time to handle a request, by handler.");
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange t, Chain chain) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    chain.doFilter(t);
+                } finally {
+                    timer.record(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Request timer for " + handler;
+            }
+        };
+    }
+
+    /**
+     * Finds the till session named by the request's cookie, starting a new one
+     * (and setting the cookie) when the request has none or it has expired.
+     * @param base The path the restaurant is served under, which scopes the cookie.
+     */
+    private static Session resolveSession(HttpExchange t, Restaurant restaurant, String base) {
+        Session session = findSession(t, restaurant);
+        if (session == null) {
+            session = restaurant.getSessions().create();
+            setSessionCookie(t, session, base);
+        }
+        return session;
+    }
+
+    /**
+     * Drops the session and starts a fresh one under a new id, so an id seen
+     * before login (or kept after logout) never names a logged-in till.
+     */
+    private static Session replaceSession(HttpExchange t, Restaurant restaurant, String base, Session old) {
+        restaurant.getSessions().invalidate(old.getId());
+        Session session = restaurant.getSessions().create();
+        setSessionCookie(t, session, base);
+        return session;
+    }
+
+    // Replaces any cookie already set on this response; the session cookie is the only one
+    private static void setSessionCookie(HttpExchange t, Session session, String base) {
+        t.getResponseHeaders().set("Set-Cookie",
+            SESSION_COOKIE + "=" + session.getId() + "; Path=" + base + "; HttpOnly; SameSite=Strict");
+    }
+
+    /**
+     * @return The live session named by the request's cookie, or null. Under an
+     *         outlet the browser also sends the root's cookie, so each is tried.
+     */
+    private static Session findSession(HttpExchange t, Restaurant restaurant) {
+        List<String> cookies = t.getRequestHeaders().get("Cookie");
+        if (cookies != null) {
+            for (String header : cookies) {
+                for (String cookie : header.split(";")) {
+                    String c = cookie.trim();
+                    if (c.startsWith(SESSION_COOKIE + "=")) {
+                        Session session = restaurant.getSessions().get(c.substring(SESSION_COOKIE.length() + 1));
+                        if (session != null) return refreshUser(restaurant, session);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Picks up a role change, and logs the till out if its account was deactivated meanwhile
+    private static Session refreshUser(Restaurant restaurant, Session session) {
+        User user = session.getUser();
+        if (user == null) return session;
+        User account = restaurant.getAuthService().currentAccount(user);
+        if (account != user) {
+            session.setUser(account);
+            if (account == null) session.setLoginMessage("Your account is no longer active.");
+        }
+        return session;
+    }
+
+    private static final StaticAssets ASSETS = new StaticAssets(Paths.get("."));
+    private static final HttpHandler STYLE = ASSETS.handler("style.css");
+    private static final FormParser FORM_PARSER = new FormParser();
+    private static final PageTemplate INDEX_PAGE = new PageTemplate(Paths.get("index.html"));
+    private static final PageTemplate LOGIN_PAGE = new PageTemplate(Paths.get("login.html"));
+
+    private static final byte[] USER_INFO_START = utf8(
+        "<div style='position: absolute; top: 10px; right: 10px; text-align: right;'>" +
+        "<span>Logged in as: <strong>");
+    private static final byte[] USER_INFO_END = utf8(
+        "</strong></span><br>" +
+        "<form action='action' method='post' style='display: inline;'>" +
+        "<input type='hidden' name='action' value='logout'>" +
+        "<button type='submit' style='padding: 5px 10px; background: #95a5a6; border: none; color: white; border-radius: 3px; cursor: pointer; font-size: 0.8em; margin-top: 5px;'>Logout</button>" +
+        "</form></div>");
+    private static final byte[] MANAGER_CONTROLS = utf8(
+        "<div class='panel system-box' style='margin-top: 20px; border-top: 2px solid #eee; padding-top: 20px;'>" +
+        "<h3>Manager Controls</h3>" +
+        "<form action='action' method='post' style='margin-bottom: 10px;'>" +
+        "<h4>Modify Menu Price</h4>" +
+        "<input type='text' name='code' placeholder='Code' required style='width: 50px; margin-right: 5px; padding: 5px;'>" +
+        "<input type='number' name='price' step='0.01' placeholder='Price' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
+        "<input type='hidden' name='action' value='modify_price'>" +
+        "<button type='submit' class='btn' style='background: #e67e22;'>Update</button>" +
+        "</form>" +
+        "<form action='action' method='post' style='margin-bottom: 10px;'>" +
+        "<h4>Process Refund</h4>" +
+        "<input type='number' name='order_number' placeholder='Order #' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
+        "<input type='hidden' name='action' value='refund'>" +
+        "<button type='submit' class='btn' style='background: #c0392b;'>Refund</button>" +
+        "</form>" +
+        "<form action='action' method='post' style='margin-bottom: 10px;'>" +
+        "<h4>Sales History</h4>" +
+        "<select name='range' style='margin-right: 5px; padding: 5px;'>" +
+        "<option value='week'>Last 7 days</option><option value='month' selected>This month</option><option value='year'>Year to date</option>" +
+        "</select>" +
+        "<input type='text' name='item' placeholder='Item' style='width: 50px; margin-right: 5px; padding: 5px;'><br>" +
+        "<input type='date' name='from' style='margin: 5px 5px 0 0; padding: 5px;'>" +
+        "<input type='date' name='to' style='margin: 5px 5px 0 0; padding: 5px;'>" +
+        "<input type='hidden' name='action' value='history'>" +
+        "<button type='submit' class='btn' style='background: #16a085;'>View</button>" +
+        "</form>" +
+        "<form action='action' method='post'>" +
+        "<h4>Audit Logs</h4>" +
+        "<input type='hidden' name='action' value='view_log'>" +
+        "<button type='submit' class='btn' style='background: #34495e;'>View Logs</button>" +
+        "</form>" +
+        "</div>");
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
     }
 
-    private static String getLoginPage() {
+    /**
+     * Sends the till page for the session, or the login page if nobody is logged in.
+     */
+    private static void sendPage(HttpExchange t, Restaurant restaurant, Session session, String message) throws IOException {
+        User currentUser = session.getUser();
+        if (currentUser == null) {
+            String loginMessage = session.getLoginMessage();
+            LOGIN_PAGE.send(t, (slot, out) -> {
+                if ("LOGIN_MESSAGE".equals(slot)) out.append(loginMessage);
+            });
+            return;
+        }
+
+        // Build the dynamic parts before the headers go out, so failures can still become a 500
+        String menu = restaurant.getMenuDisplay();
+        String order = restaurant.getCurrentOrderDisplay(session);
+        boolean manager = restaurant.getAuthService().hasPermission(currentUser, Permission.MODIFY_MENU);
+        INDEX_PAGE.send(t, (slot, out) -> {
+            switch (slot) {
+                case "MENU":
+                    out.append(menu);
+                    break;
+                case "ORDER":
+                    out.append(order);
+                    break;
+                case "MESSAGE":
+                    out.append(message);
+                    break;
+                case "USER_INFO":
+                    out.write(USER_INFO_START).append(currentUser.getUsername()).append(" (")
+                       .append(currentUser.getRole().name()).append(')').write(USER_INFO_END);
+                    break;
+                case "MANAGER_CONTROLS":
+                    if (manager) out.write(MANAGER_CONTROLS);
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    private static long contentLength(HttpExchange t) {
+        String header = t.getRequestHeaders().getFirst("Content-Length");
+        if (header == null) return -1;
         try {
-            String content = Files.readString(Paths.get("login.html"), StandardCharsets.UTF_8);
-            return content.replace("{{LOGIN_MESSAGE}}", loginMessage);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "Error loading login page";
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
-    static class StyleHandler implements HttpHandler {
+    private static void sendError(HttpExchange t, Exception e) throws IOException {
+        e.printStackTrace();
+        if (t.getResponseCode() != -1) {
+            // Headers already sent; all we can do is cut the response short
+            t.close();
+            return;
+        }
+        byte[] error = ("Error: " + e.getMessage()).getBytes(StandardCharsets.UTF_8);
+        t.sendResponseHeaders(500, error.length);
+        t.getResponseBody().write(error);
+        t.getResponseBody().close();
+    }
+
+    static class RootHandler implements HttpHandler {
+        private final Restaurant restaurant;
+        private final String base;
+
+        RootHandler(Restaurant restaurant, String base) {
+            this.restaurant = restaurant;
+            this.base = base;
+        }
+
         @Override
         public void handle(HttpExchange t) throws IOException {
-            byte[] response = Files.readAllBytes(Paths.get("style.css"));
-            t.getResponseHeaders().set("Content-Type", "text/css");
-            t.sendResponseHeaders(200, response.length);
-            OutputStream os = t.getResponseBody();
-            os.write(response);
-            os.close();
+            try {
+                Session session = resolveSession(t, restaurant, base);
+                sendPage(t, restaurant, session, "");
+            } catch (Exception e) {
+                sendError(t, e);
+            }
         }
     }
 
-    static class RootHandler implements HttpHandler {
+    // The session's user if the caller has a logged-in cookie, else HTTP Basic credentials
+    private static User apiUser(HttpExchange t, Restaurant restaurant) {
+        Session session = findSession(t, restaurant);
+        if (session != null && session.getUser() != null) {
+            return session.getUser();
+        }
+        String header = t.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return null;
+        }
+        try {
+            String credentials = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = credentials.indexOf(':');
+            if (colon < 0) return null;
+            return restaurant.getAuthService().authenticate(credentials.substring(0, colon), credentials.substring(colon + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder(message.length() + 16).append("{\"error\":");
+        return appendJsonString(json, message).append('}').toString();
+    }
+
+    private static StringBuilder appendJsonString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"');
+    }
+
+    private static void sendJson(HttpExchange t, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        t.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        t.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = t.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Takes a whole order in one POST and answers with JSON, for kiosks and
+     * delivery integrations. The body is form-encoded: one item=CODE:QTY per
+     * line item plus amount=TENDERED. Callers authenticate with a logged-in
+     * session cookie or HTTP Basic credentials.
+     */
+    static class OrderApiHandler implements HttpHandler {
+        private final Restaurant restaurant;
+
+        OrderApiHandler(Restaurant restaurant) {
+            this.restaurant = restaurant;
+        }
+
         @Override
         public void handle(HttpExchange t) throws IOException {
+            if (!"POST".equals(t.getRequestMethod())) {
+                t.getResponseHeaders().set("Allow", "POST");
+                sendJson(t, 405, error("POST required"));
+                return;
+            }
+            FormData params;
+            try {
+                params = FORM_PARSER.parse(t.getRequestBody(), contentLength(t));
+            } catch (RequestTooLargeException e) {
+                sendJson(t, 413, error(e.getMessage()));
+                return;
+            }
+
+            User user = apiUser(t, restaurant);
+            if (user == null) {
+                t.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"FoodRegistry\"");
+                sendJson(t, 401, error("Login required"));
+                return;
+            }
+
+            List<String> items = params.getAll("item");
+            String[] codes = new String[items.size()];
+            int[] quantities = new int[items.size()];
+            long amount;
             try {
-                // Check authentication
-                User currentUser = restaurant.getAuthService().getCurrentUser();
-                if (currentUser == null) {
-                     String response = getLoginPage();
-                     byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-                     t.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-                     t.sendResponseHeaders(200, bytes.length);
-                     OutputStream os = t.getResponseBody();
-                     os.write(bytes);
-                     os.close();
-                     return;
+                for (int i = 0; i < items.size(); i++) {
+                    String item = items.get(i);
+                    int colon = item.lastIndexOf(':');
+                    codes[i] = (colon < 0 ? item : item.substring(0, colon)).trim();
+                    quantities[i] = colon < 0 ? 1 : Integer.parseInt(item.substring(colon + 1).trim());
                 }
+                amount = Money.parse(params.getOrDefault("amount", ""));
+            } catch (NumberFormatException e) {
+                sendJson(t, 400, error("Invalid quantity or amount"));
+                return;
+            }
 
-                String template = Files.readString(Paths.get("index.html"), StandardCharsets.UTF_8);
-                
-                String menu = restaurant.getMenuDisplay();
-                String order = restaurant.getCurrentOrderDisplay();
-                
-                // Build User Info
-                String userInfo = "<div style='position: absolute; top: 10px; right: 10px; text-align: right;'>" +
-                                  "<span>Logged in as: <strong>" + currentUser.getUsername() + " (" + currentUser.getRole() + ")</strong></span><br>" +
-                                  "<form action='/action' method='post' style='display: inline;'>" +
-                                  "<input type='hidden' name='action' value='logout'>" +
-                                  "<button type='submit' style='padding: 5px 10px; background: #95a5a6; border: none; color: white; border-radius: 3px; cursor: pointer; font-size: 0.8em; margin-top: 5px;'>Logout</button>" +
-                                  "</form></div>";
-
-                // Build Manager Controls
-                String managerControls = "";
-                if (restaurant.getAuthService().hasPermission(Permission.MODIFY_MENU)) {
-                     managerControls += "<div class='panel system-box' style='margin-top: 20px; border-top: 2px solid #eee; padding-top: 20px;'>" +
-                                        "<h3>Manager Controls</h3>" +
-                                        "<form action='/action' method='post' style='margin-bottom: 10px;'>" +
-                                        "<h4>Modify Menu Price</h4>" +
-                                        "<input type='text' name='code' placeholder='Code' required style='width: 50px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='number' name='price' step='0.01' placeholder='Price' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='hidden' name='action' value='modify_price'>" +
-                                        "<button type='submit' class='btn' style='background: #e67e22;'>Update</button>" +
-                                        "</form>" +
-                                        "<form action='/action' method='post' style='margin-bottom: 10px;'>" +
-                                        "<h4>Process Refund</h4>" +
-                                        "<input type='number' name='order_number' placeholder='Order #' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='hidden' name='action' value='refund'>" +
-                                        "<button type='submit' class='btn' style='background: #c0392b;'>Refund</button>" +
-                                        "</form>" +
-                                        "<form action='/action' method='post'>" +
-                                        "<h4>Audit Logs</h4>" +
-                                        "<input type='hidden' name='action' value='view_log'>" +
-                                        "<button type='submit' class='btn' style='background: #34495e;'>View Logs</button>" +
-                                        "</form>" +
-                                        "</div>";
+            try {
+                OrderResult result = restaurant.processBatchOrder(user, codes, quantities, amount);
+                if (!result.isPaid()) {
+                    StringBuilder json = new StringBuilder(96);
+                    Money.append(json.append("{\"error\":\"Insufficient payment\",\"total\":"), result.getTotalCents()).append('}');
+                    sendJson(t, 400, json.toString());
+                    return;
                 }
-                
-                String response = template.replace("{{MENU}}", menu)
-                                        .replace("{{ORDER}}", order)
-                                        .replace("{{MESSAGE}}", "")
-                                        .replace("{{USER_INFO}}", userInfo)
-                                        .replace("{{MANAGER_CONTROLS}}", managerControls);
-
-                byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-                t.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-                t.sendResponseHeaders(200, bytes.length);
-                OutputStream os = t.getResponseBody();
+                StringBuilder json = new StringBuilder(160);
+                json.append("{\"orderNumber\":").append(result.getOrderNumber());
+                Money.append(json.append(",\"subtotal\":"), result.getSubtotalCents());
+                Money.append(json.append(",\"sst\":"), result.getSSTCents());
+                Money.append(json.append(",\"total\":"), result.getTotalCents());
+                Money.append(json.append(",\"paid\":"), result.getAmountPaidCents());
+                Money.append(json.append(",\"change\":"), result.getChangeCents());
+                json.append('}');
+                sendJson(t, 200, json.toString());
+            } catch (UnauthorizedException e) {
+                sendJson(t, 403, error(e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                sendJson(t, 400, error(e.getMessage()));
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendJson(t, 500, error("Error: " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Serves the restaurant's metrics in the Prometheus text format, to local scrapers only.
+     */
+    static class MetricsHandler implements HttpHandler {
+        private final Restaurant restaurant;
+
+        MetricsHandler(Restaurant restaurant) {
+            this.restaurant = restaurant;
+        }
+
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            if (!t.getRemoteAddress().getAddress().isLoopbackAddress()) {
+                t.sendResponseHeaders(403, -1);
+                t.close();
+                return;
+            }
+            if (!"GET".equals(t.getRequestMethod())) {
+                t.getResponseHeaders().set("Allow", "GET");
+                t.sendResponseHeaders(405, -1);
+                t.close();
+                return;
+            }
+            StringBuilder out = new StringBuilder(8192);
+            restaurant.getMetrics().writeTo(out);
+            byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+            t.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            t.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = t.getResponseBody()) {
                 os.write(bytes);
-                os.close();
+            }
+        }
+    }
+
+    /**
+     * Routes /outlet/{id}/... to the outlet's own handlers, opening the outlet
+     * if it isn't open and holding it open for the request.
+     */
+    static class OutletHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            String path = t.getRequestURI().getPath();
+            int slash = path.indexOf('/', OUTLET_PREFIX.length());
+            String id = path.substring(OUTLET_PREFIX.length(), slash < 0 ? path.length() : slash);
+            OutletRegistry.Outlet outlet;
+            try {
+                outlet = outlets.acquire(id);
+            } catch (RuntimeException e) {
+                sendError(t, e);
+                return;
+            }
+            if (outlet == null) {
+                t.sendResponseHeaders(404, -1);
+                t.close();
+                return;
+            }
+            try {
+                if (outlets.isBusy(outlet)) {
+                    t.getResponseHeaders().set("Retry-After", "1");
+                    t.sendResponseHeaders(503, -1);
+                    t.close();
+                } else if (slash < 0) {
+                    // Pages use relative links, so the outlet's root needs its trailing slash
+                    t.getResponseHeaders().set("Location", path + "/");
+                    t.sendResponseHeaders(301, -1);
+                    t.close();
+                } else {
+                    outlet.getHandler().handle(t);
+                }
+            } finally {
+                outlets.release(outlet);
+            }
+        }
+    }
+
+    /**
+     * Replaces the whole menu from a CSV catalogue in one POST, for head
+     * office. The body is the catalogue itself (code,name,price per line).
+     * Nothing changes unless every line is valid; otherwise the answer lists
+     * the problems by line number. Needs a manager, by session cookie or
+     * HTTP Basic credentials.
+     */
+    static class MenuApiHandler implements HttpHandler {
+        private final Restaurant restaurant;
+
+        MenuApiHandler(Restaurant restaurant) {
+            this.restaurant = restaurant;
+        }
+
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            if (!"POST".equals(t.getRequestMethod())) {
+                t.getResponseHeaders().set("Allow", "POST");
+                sendJson(t, 405, error("POST required"));
+                return;
+            }
+            User user = apiUser(t, restaurant);
+            if (user == null) {
+                t.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"FoodRegistry\"");
+                sendJson(t, 401, error("Login required"));
+                return;
+            }
+            // Only managers get to send a catalogue at all
+            if (!restaurant.getAuthService().hasPermission(user, Permission.MODIFY_MENU)) {
+                sendJson(t, 403, error("Access Denied: MODIFY_MENU requires MANAGER privileges"));
+                return;
+            }
+            byte[] body;
+            try {
+                body = MenuCatalog.read(t.getRequestBody(), contentLength(t));
+            } catch (RequestTooLargeException e) {
+                sendJson(t, 413, error(e.getMessage()));
+                return;
+            }
+            try {
+                MenuCatalog.Result result = restaurant.importMenu(user, body, body.length);
+                if (!result.isValid()) {
+                    StringBuilder json = new StringBuilder(256).append("{\"error\":\"Catalogue rejected\",\"errorCount\":")
+                        .append(result.getErrorCount()).append(",\"errors\":[");
+                    for (int i = 0; i < result.getErrors().size(); i++) {
+                        appendJsonString(i == 0 ? json : json.append(','), result.getErrors().get(i));
+                    }
+                    sendJson(t, 400, json.append("]}").toString());
+                    return;
+                }
+                MenuSnapshot menu = restaurant.getMenu();
+                sendJson(t, 200, "{\"version\":" + menu.getVersion() + ",\"items\":" + menu.size() + "}");
+            } catch (UnauthorizedException e) {
+                sendJson(t, 403, error(e.getMessage()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                sendJson(t, 500, error("Menu not saved: " + e.getMessage()));
             } catch (Exception e) {
                 e.printStackTrace();
-                String error = "Error: " + e.getMessage();
-                t.sendResponseHeaders(500, error.length());
-                t.getResponseBody().write(error.getBytes());
-                t.getResponseBody().close();
+                sendJson(t, 500, error("Error: " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * The pages, actions, order API and metrics of one outlet, below its base path.
+     */
+    static class OutletRoutes implements HttpHandler {
+        private final String base;
+        private final HttpHandler root;
+        private final HttpHandler action;
+        private final HttpHandler api;
+        private final HttpHandler menuApi;
+        private final HttpHandler metrics;
+
+        OutletRoutes(Restaurant restaurant, String base) {
+            this.base = base;
+            this.root = new RootHandler(restaurant, base);
+            this.action = new ActionHandler(restaurant, base);
+            this.api = new OrderApiHandler(restaurant);
+            this.menuApi = new MenuApiHandler(restaurant);
+            this.metrics = new MetricsHandler(restaurant);
+        }
+
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            switch (t.getRequestURI().getPath().substring(base.length())) {
+                case "":
+                    root.handle(t);
+                    break;
+                case "action":
+                    action.handle(t);
+                    break;
+                case "api/order":
+                    api.handle(t);
+                    break;
+                case "api/menu":
+                    menuApi.handle(t);
+                    break;
+                case "metrics":
+                    metrics.handle(t);
+                    break;
+                case "style.css":
+                    STYLE.handle(t);
+                    break;
+                default:
+                    t.sendResponseHeaders(404, -1);
+                    t.close();
+                    break;
             }
         }
     }
 
     static class ActionHandler implements HttpHandler {
+        private static final String[] ACTIONS = {
+            "login", "logout", "add", "clear", "checkout", "report", "history", "modify_price", "refund", "reprint", "view_log"
+        };
+        private final Restaurant restaurant;
+        private final String base;
+        private static final Pattern ITEM_CODE = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+        private final Map<String, LatencyHistogram> actionTimers = new HashMap<>();
+        private final LatencyHistogram otherTimer;
+
+        ActionHandler(Restaurant restaurant, String base) {
+            this.restaurant = restaurant;
+            this.base = base;
+            for (String action : ACTIONS) {
+                actionTimers.put(action, actionTimer(action));
+            }
+            otherTimer = actionTimer("other");
+        }
+
+        private LatencyHistogram actionTimer(String action) {
+            return restaurant.getMetrics().timer("foodregistry_action_seconds", "action=\"" + action + "\"",
+                "Time to handle a till action, including rendering the page.");
+        }
+
         @Override
         public void handle(HttpExchange t) throws IOException {
             if ("POST".equals(t.getRequestMethod())) {
-                StringBuilder sb = new StringBuilder();
-                int i;
-                while ((i = t.getRequestBody().read()) != -1) {
-                    sb.append((char) i);
+                FormData params;
+                try {
+                    params = FORM_PARSER.parse(t.getRequestBody(), contentLength(t));
+                } catch (RequestTooLargeException e) {
+                    t.sendResponseHeaders(413, -1);
+                    t.close();
+                    return;
                 }
-                String formData = sb.toString();
-                Map<String, String> params = parseFormData(formData);
+                long start = System.nanoTime();
+                Session session = resolveSession(t, restaurant, base);
                 
                 String message = "";
                 String action = params.get("action");
@@ -155,53 +663,67 @@ public class Main {
                     if ("login".equals(action)) {
                         String u = params.get("username");
                         String p = params.get("password");
-                        if (restaurant.getAuthService().login(u, p)) {
-                            loginMessage = "";
+                        User user = restaurant.getAuthService().authenticate(u, p);
+                        if (user != null) {
+                            session = replaceSession(t, restaurant, base, session);
+                            session.setUser(user);
+                            session.setLoginMessage("");
                             // Redirect to home to avoid resubmission issues or just render home
                         } else {
-                            loginMessage = "Invalid credentials!";
+                            session.setLoginMessage("Invalid credentials!");
                         }
                     } else if ("logout".equals(action)) {
-                        restaurant.getAuthService().logout();
-                        loginMessage = "Logged out successfully.";
+                        session = replaceSession(t, restaurant, base, session);
+                        session.setLoginMessage("Logged out successfully.");
                     } else if ("add".equals(action)) {
                         String codeStr = params.get("code");
                         String qtyStr = params.get("quantity");
                         if (codeStr != null && !codeStr.isEmpty() && qtyStr != null && !qtyStr.isEmpty()) {
                             try {
-                                char code = codeStr.charAt(0);
+                                String code = codeStr.trim();
                                 int qty = Integer.parseInt(qtyStr);
-                                restaurant.processItemCode(code, qty);
+                                if (Math.abs(qty) > Order.MAX_LINE_QUANTITY) {
+                                    message = "Quantity must be at most " + Order.MAX_LINE_QUANTITY + ".";
+                                } else {
+                                    restaurant.processItemCode(session, code, qty);
+                                }
                             } catch (NumberFormatException e) {
                                 message = "Invalid input.";
                             }
                         }
                     } else if ("clear".equals(action)) {
-                        restaurant.clearOrder();
+                        restaurant.clearOrder(session);
                         message = "Order cleared.";
                     } else if ("checkout".equals(action)) {
                         String amtStr = params.get("amount");
                         if (amtStr != null && !amtStr.isEmpty()) {
                             try {
-                                float amount = Float.parseFloat(amtStr);
-                                message = restaurant.processPayment(amount);
+                                long amount = Money.parse(amtStr);
+                                message = restaurant.processPaymentCents(session, amount);
                             } catch (NumberFormatException e) {
                                 message = "Invalid amount.";
                             }
                         }
                     } else if ("report".equals(action)) {
-                         message = restaurant.generateDailyReport();
+                         int page = parseIntOrDefault(params.get("page"), 1);
+                         int size = parseIntOrDefault(params.get("size"), Restaurant.DEFAULT_REPORT_PAGE_SIZE);
+                         message = restaurant.generateDailyReport(session, page, size);
+                    } else if ("history".equals(action)) {
+                        message = renderHistory(session, params);
                     } else if ("modify_price".equals(action)) {
                         String codeStr = params.get("code");
                         String priceStr = params.get("price");
                         if (codeStr != null && !codeStr.isEmpty() && priceStr != null && !priceStr.isEmpty()) {
                             try {
-                                char code = codeStr.charAt(0);
-                                float price = Float.parseFloat(priceStr);
-                                restaurant.modifyMenuPrice(code, price);
-                                message = "Price updated for " + code;
+                                String code = codeStr.trim();
+                                long price = Money.parse(priceStr);
+                                message = restaurant.modifyMenuPriceCents(session, code, price)
+                                    ? "Price updated for " + Html.escape(code)
+                                    : "Unknown item code: " + Html.escape(code);
                             } catch (NumberFormatException e) {
                                 message = "Invalid input.";
+                            } catch (IllegalArgumentException e) {
+                                message = e.getMessage();
                             }
                         }
                     } else if ("refund".equals(action)) {
@@ -209,23 +731,31 @@ public class Main {
                         if (ordStr != null && !ordStr.isEmpty()) {
                             try {
                                 int orderNum = Integer.parseInt(ordStr);
-                                message = restaurant.processRefund(orderNum);
+                                message = restaurant.processRefund(session, orderNum);
+                            } catch (NumberFormatException e) {
+                                message = "Invalid order number.";
+                            }
+                        }
+                    } else if ("reprint".equals(action)) {
+                        String ordStr = params.get("order_number");
+                        if (ordStr != null && !ordStr.isEmpty()) {
+                            try {
+                                int orderNum = Integer.parseInt(ordStr.trim());
+                                String receipt = restaurant.reprintReceipt(session, orderNum);
+                                message = receipt == null
+                                    ? "Receipt #" + orderNum + " not found."
+                                    : "<h3>Reprint: Order #" + orderNum + "</h3><pre class='receipt'>" + Html.escape(receipt) + "</pre>";
                             } catch (NumberFormatException e) {
                                 message = "Invalid order number.";
                             }
                         }
                     } else if ("view_log".equals(action)) {
-                        if (restaurant.getAuthService().hasPermission(Permission.VIEW_HISTORICAL_REPORT)) { // Using existing permission or create new one?
+                        if (restaurant.getAuthService().hasPermission(session.getUser(), Permission.VIEW_HISTORICAL_REPORT)) { // Using existing permission or create new one?
                              // Re-using VIEW_HISTORICAL_REPORT as generic "view logs" or just MANAGER check
                              // The requirement said "AuditLog... records user actions".
                              // Let's just assume manager can view it.
-                             if (restaurant.getAuthService().getCurrentUser().getRole() == Role.MANAGER) {
-                                 StringBuilder logHtml = new StringBuilder("<h3>System Logs</h3><ul style='text-align:left;'>");
-                                 for(String log : restaurant.getAuditLog().viewLog()) {
-                                     logHtml.append("<li>").append(log).append("</li>");
-                                 }
-                                 logHtml.append("</ul>");
-                                 message = logHtml.toString();
+                             if (session.getUser().getRole() == Role.MANAGER) {
+                                 message = renderAuditLog(params);
                              } else {
                                  throw new UnauthorizedException("Only Manager can view logs.");
                              }
@@ -239,84 +769,159 @@ public class Main {
                     message = "Error: " + e.getMessage();
                 }
 
-                // If logged out or not logged in, return login page
-                User currentUser = restaurant.getAuthService().getCurrentUser();
-                if (currentUser == null) {
-                    String response = getLoginPage();
-                    byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-                    t.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-                    t.sendResponseHeaders(200, bytes.length);
-                    OutputStream os = t.getResponseBody();
-                    os.write(bytes);
-                    os.close();
-                    return;
-                }
-
-                String template = Files.readString(Paths.get("index.html"), StandardCharsets.UTF_8);
-                String menu = restaurant.getMenuDisplay();
-                String order = restaurant.getCurrentOrderDisplay();
-                
-                // Build User Info
-                String userInfo = "<div style='position: absolute; top: 10px; right: 10px; text-align: right;'>" +
-                                  "<span>Logged in as: <strong>" + currentUser.getUsername() + " (" + currentUser.getRole() + ")</strong></span><br>" +
-                                  "<form action='/action' method='post' style='display: inline;'>" +
-                                  "<input type='hidden' name='action' value='logout'>" +
-                                  "<button type='submit' style='padding: 5px 10px; background: #95a5a6; border: none; color: white; border-radius: 3px; cursor: pointer; font-size: 0.8em; margin-top: 5px;'>Logout</button>" +
-                                  "</form></div>";
-
-                // Build Manager Controls
-                String managerControls = "";
-                if (restaurant.getAuthService().hasPermission(Permission.MODIFY_MENU)) {
-                     managerControls += "<div class='panel system-box' style='margin-top: 20px; border-top: 2px solid #eee; padding-top: 20px;'>" +
-                                        "<h3>Manager Controls</h3>" +
-                                        "<form action='/action' method='post' style='margin-bottom: 10px;'>" +
-                                        "<h4>Modify Menu Price</h4>" +
-                                        "<input type='text' name='code' placeholder='Code' required style='width: 50px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='number' name='price' step='0.01' placeholder='Price' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='hidden' name='action' value='modify_price'>" +
-                                        "<button type='submit' class='btn' style='background: #e67e22;'>Update</button>" +
-                                        "</form>" +
-                                        "<form action='/action' method='post' style='margin-bottom: 10px;'>" +
-                                        "<h4>Process Refund</h4>" +
-                                        "<input type='number' name='order_number' placeholder='Order #' required style='width: 80px; margin-right: 5px; padding: 5px;'>" +
-                                        "<input type='hidden' name='action' value='refund'>" +
-                                        "<button type='submit' class='btn' style='background: #c0392b;'>Refund</button>" +
-                                        "</form>" +
-                                        "<form action='/action' method='post'>" +
-                                        "<h4>Audit Logs</h4>" +
-                                        "<input type='hidden' name='action' value='view_log'>" +
-                                        "<button type='submit' class='btn' style='background: #34495e;'>View Logs</button>" +
-                                        "</form>" +
-                                        "</div>";
+                // Logged out or not logged in shows the login page
+                try {
+                    sendPage(t, restaurant, session, message);
+                } catch (Exception e) {
+                    sendError(t, e);
                 }
-                
-                String response = template.replace("{{MENU}}", menu)
-                                        .replace("{{ORDER}}", order)
-                                        .replace("{{MESSAGE}}", message)
-                                        .replace("{{USER_INFO}}", userInfo)
-                                        .replace("{{MANAGER_CONTROLS}}", managerControls);
-
-                byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-                t.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-                t.sendResponseHeaders(200, bytes.length);
-                OutputStream os = t.getResponseBody();
-                os.write(bytes);
-                os.close();
+                LatencyHistogram timer = action == null ? null : actionTimers.get(action);
+                (timer != null ? timer : otherTimer).record(System.nanoTime() - start);
             }
         }
         
-        private Map<String, String> parseFormData(String formData) {
-            Map<String, String> map = new HashMap<>();
-            String[] pairs = formData.split("&");
-            for (String pair : pairs) {
-                String[] keyValue = pair.split("=");
-                if (keyValue.length == 2) {
-                    try {
-                        map.put(keyValue[0], URLDecoder.decode(keyValue[1], "UTF-8"));
-                    } catch (Exception e) {}
+        /**
+         * Renders one page of audit entries, newest first, with filters on user,
+         * action type and date range (from/to as yyyy-MM-dd, both inclusive).
+         */
+        private String renderAuditLog(FormData params) {
+            String user = params.get("user");
+            if (user != null && user.trim().isEmpty()) user = null;
+            AuditAction type = null;
+            String typeStr = params.get("type");
+            if (typeStr != null && !typeStr.isEmpty()) {
+                try {
+                    type = AuditAction.valueOf(typeStr);
+                } catch (IllegalArgumentException e) {
+                    type = null;
                 }
             }
-            return map;
+            String fromStr = params.getOrDefault("from", "").trim();
+            String toStr = params.getOrDefault("to", "").trim();
+            if (!isDateOrEmpty(fromStr) || !isDateOrEmpty(toStr)) {
+                return "Invalid date: use YYYY-MM-DD.";
+            }
+            long from = dayStartMillis(fromStr, 0, Long.MIN_VALUE);
+            long to = dayStartMillis(toStr, 1, Long.MAX_VALUE);
+            int size = Math.max(1, Math.min(500, parseIntOrDefault(params.get("size"), 50)));
+            long cursor = -1;
+            try {
+                String cursorStr = params.get("cursor");
+                if (cursorStr != null && !cursorStr.isEmpty()) cursor = Long.parseLong(cursorStr);
+            } catch (NumberFormatException e) {
+                cursor = -1;
+            }
+
+            AuditLog.Page page = restaurant.getAuditLog().query(user == null ? null : user.trim(), type, from, to, cursor, size);
+
+            StringBuilder html = new StringBuilder(256 + page.getEntries().size() * 160);
+            html.append("<h3>System Logs</h3>");
+            html.append("<form action='action' method='post' style='margin-bottom: 10px;'>");
+            html.append("<input type='hidden' name='action' value='view_log'>");
+            html.append("<input type='text' name='user' placeholder='User' value='").append(user == null ? "" : Html.escape(user.trim())).append("' style='width: 90px; margin-right: 5px; padding: 5px;'>");
+            html.append("<select name='type' style='margin-right: 5px; padding: 5px;'><option value=''>All actions</option>");
+            for (AuditAction a : AuditAction.values()) {
+                html.append("<option value='").append(a.name()).append(a == type ? "' selected>" : "'>").append(a.name()).append("</option>");
+            }
+            html.append("</select>");
+            html.append("<input type='date' name='from' value='").append(fromStr).append("' style='margin-right: 5px; padding: 5px;'>");
+            html.append("<input type='date' name='to' value='").append(toStr).append("' style='margin-right: 5px; padding: 5px;'>");
+            html.append("<button type='submit' class='btn' style='background: #34495e;'>Filter</button>");
+            html.append("</form>");
+
+            if (page.getEntries().isEmpty()) {
+                html.append("<p>No matching entries.</p>");
+                return html.toString();
+            }
+            html.append("<table style='text-align:left; width: 100%;'>");
+            html.append("<tr><th>Time</th><th>User</th><th>Employee</th><th>Action</th><th>Order</th><th>Amount</th><th>Detail</th></tr>");
+            for (AuditEntry entry : page.getEntries()) {
+                html.append("<tr><td>").append(LOG_TIME.format(entry.getTime())).append("</td><td>")
+                    .append(Html.escape(String.valueOf(entry.getUsername()))).append("</td><td>")
+                    .append(Html.escape(String.valueOf(entry.getEmployeeId()))).append("</td><td>")
+                    .append(entry.getAction().name()).append("</td><td>");
+                if (entry.getOrderNumber() > 0) html.append('#').append(entry.getOrderNumber());
+                html.append("</td><td>");
+                if (entry.getAmountCents() != 0) Money.append(html.append("RM "), entry.getAmountCents());
+                html.append("</td><td>").append(Html.escape(String.valueOf(entry.getDetail()))).append("</td></tr>");
+            }
+            html.append("</table>");
+            if (page.getNextCursor() >= 0) {
+                html.append("<form action='action' method='post'>");
+                html.append("<input type='hidden' name='action' value='view_log'>");
+                html.append("<input type='hidden' name='user' value='").append(user == null ? "" : Html.escape(user.trim())).append("'>");
+                html.append("<input type='hidden' name='type' value='").append(type == null ? "" : type.name()).append("'>");
+                html.append("<input type='hidden' name='from' value='").append(fromStr).append("'>");
+                html.append("<input type='hidden' name='to' value='").append(toStr).append("'>");
+                html.append("<input type='hidden' name='size' value='").append(size).append("'>");
+                html.append("<input type='hidden' name='cursor' value='").append(page.getNextCursor()).append("'>");
+                html.append("<button type='submit' class='btn'>Older &raquo;</button>");
+                html.append("</form>");
+            }
+            return html.toString();
+        }
+
+        /**
+         * Sales over a preset range (last 7 days, this month, year to date),
+         * or between the given from/to dates, for all items or one.
+         */
+        private String renderHistory(Session session, FormData params) throws UnauthorizedException {
+            // Ranges end today in the zone the rollups count days in
+            LocalDate today = LocalDate.now(restaurant.getZone());
+            LocalDate from;
+            String range = params.getOrDefault("range", "month");
+            if ("week".equals(range)) {
+                from = today.minusDays(6);
+            } else if ("year".equals(range)) {
+                from = today.withDayOfYear(1);
+            } else {
+                from = today.withDayOfMonth(1);
+            }
+            LocalDate to = today;
+            try {
+                String fromStr = params.get("from");
+                String toStr = params.get("to");
+                if (fromStr != null && !fromStr.isEmpty()) from = LocalDate.parse(fromStr);
+                if (toStr != null && !toStr.isEmpty()) to = LocalDate.parse(toStr);
+            } catch (DateTimeParseException e) {
+                return "Invalid date.";
+            }
+            String item = params.get("item");
+            item = item == null || item.trim().isEmpty() ? null : item.trim();
+            if (item != null && !ITEM_CODE.matcher(item).matches()) {
+                return "Invalid item code.";
+            }
+            return restaurant.generateHistoricalReport(session, from, to, item);
+        }
+
+        // Whether a date filter is blank or a YYYY-MM-DD date
+        private static boolean isDateOrEmpty(String date) {
+            if (date.isEmpty()) return true;
+            try {
+                LocalDate.parse(date);
+                return true;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        // Start of the given day (plus dayOffset days) in local time, or the fallback if not a date
+        private long dayStartMillis(String date, int dayOffset, long fallback) {
+            if (date == null || date.isEmpty()) return fallback;
+            try {
+                return LocalDate.parse(date).plusDays(dayOffset).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return fallback;
+            }
+        }
+
+        private int parseIntOrDefault(String value, int fallback) {
+            if (value == null || value.isEmpty()) return fallback;
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
         }
     }
 }
@@ -0,0 +1,342 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes menu catalogues: CSV with one "code,name,price" item per
+ * line, such as menu.txt or a full catalogue pushed by head office.
+ *
+ * The whole file is parsed from one byte array in a single pass, with no
+ * per-line Strings or splitting. Any field may be quoted, so names can hold
+ * commas ("Rice, Chicken") and doubled quotes. Codes are letters, digits,
+ * '-' and '_'. Prices are plain amounts with at most two decimals. Blank lines,
+ * a byte-order mark and a "code,name,price" header line are skipped. Every
+ * problem is reported with its line number, and the caller decides whether to
+ * keep the valid lines (startup) or reject the whole catalogue (import).
+ * Uploads are limited to -Dfoodregistry.menu.import.maxbytes (default 64MB).
+ */
+public final class MenuCatalog {
+    public static final String MAX_BYTES_PROPERTY = "foodregistry.menu.import.maxbytes";
+    private static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    // Only the first problems are kept; the rest are only counted
+    public static final int MAX_ERRORS = 100;
+    private static final int MAX_CODE_LENGTH = 32;
+    private static final int MAX_NAME_LENGTH = 200;
+
+    /**
+     * The items read from a catalogue and the problems found in it.
+     */
+    public static final class Result {
+        private final List<MenuItem> items;
+        private final List<String> errors = new ArrayList<>();
+        private int errorCount;
+        private MenuIndex index;
+
+        private Result(int expected) {
+            items = new ArrayList<>(expected);
+        }
+
+        /**
+         * @return The items that parsed, in file order. Duplicate codes are
+         *         included; the first one is the one a menu finds.
+         */
+        public List<MenuItem> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        /**
+         * @return Up to MAX_ERRORS problems, each starting "Line n: ".
+         */
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return How many problems there were, including those not kept.
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * @return Whether every line was valid and the catalogue has items.
+         */
+        public boolean isValid() {
+            return errorCount == 0 && !items.isEmpty();
+        }
+
+        /**
+         * @return The items as a menu version, reusing the index built while checking for duplicates.
+         */
+        MenuSnapshot toMenu(long version) {
+            return new MenuSnapshot(version, new ArrayList<>(items), index);
+        }
+
+        private void error(int line, String message) {
+            if (errorCount++ < MAX_ERRORS) errors.add("Line " + line + ": " + message);
+        }
+    }
+
+    private MenuCatalog() {}
+
+    public static Result parse(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return parse(bytes, bytes.length);
+    }
+
+    /**
+     * Reads a whole catalogue from a request body.
+     * @param declaredLength The Content-Length, or -1 if not given; only checked against the limit.
+     * @throws RequestTooLargeException if the body is over the size limit.
+     */
+    public static byte[] read(InputStream in, long declaredLength) throws IOException {
+        int maxBytes = Integer.getInteger(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES);
+        if (declaredLength > maxBytes) {
+            throw new RequestTooLargeException("Catalogue of " + declaredLength + " bytes exceeds " + maxBytes);
+        }
+        // Grown as the bytes arrive, so a large Content-Length alone reserves nothing
+        byte[] buffer = new byte[Math.min(maxBytes, 64 * 1024)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                if (length == maxBytes) {
+                    if (in.read() == -1) break;
+                    throw new RequestTooLargeException("Catalogue exceeds " + maxBytes + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, buffer.length * 2L));
+            }
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) break;
+            length += n;
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Parses the first length bytes of the array as UTF-8. Quoted fields are
+     * unescaped in place, so the bytes are overwritten in the process.
+     */
+    public static Result parse(byte[] data, int length) {
+        // About 20 bytes a line; the guess only sizes the arrays
+        Result result = new Result(Math.max(16, length / 20));
+        int[] starts = new int[3];
+        int[] ends = new int[3];
+        int pos = 0;
+        if (length >= 3 && (data[0] & 0xff) == 0xEF && (data[1] & 0xff) == 0xBB && (data[2] & 0xff) == 0xBF) {
+            pos = 3;
+        }
+        int line = 0;
+        // The line each item came from, for duplicate reports
+        int[] lines = new int[Math.max(16, length / 20)];
+        while (pos < length) {
+            line++;
+            int eol = pos;
+            while (eol < length && data[eol] != '\n') eol++;
+            int end = eol > pos && data[eol - 1] == '\r' ? eol - 1 : eol;
+            int start = pos;
+            pos = eol + 1;
+            if (isBlank(data, start, end) || (line == 1 && isHeader(data, start, end))) continue;
+
+            // Split into fields, unquoting in place
+            int fields = 0;
+            String problem = null;
+            int p = start;
+            while (true) {
+                while (p < end && (data[p] == ' ' || data[p] == '\t')) p++;
+                int fieldStart = p;
+                int fieldEnd;
+                if (p < end && data[p] == '"') {
+                    int out = ++p;
+                    fieldStart = out;
+                    boolean closed = false;
+                    while (p < end) {
+                        byte b = data[p++];
+                        if (b == '"') {
+                            if (p < end && data[p] == '"') {
+                                p++;
+                            } else {
+                                closed = true;
+                                break;
+                            }
+                        }
+                        data[out++] = b;
+                    }
+                    if (!closed) {
+                        problem = "unterminated quote";
+                        break;
+                    }
+                    fieldEnd = out;
+                    while (p < end && (data[p] == ' ' || data[p] == '\t')) p++;
+                    if (p < end && data[p] != ',') {
+                        problem = "unexpected text after a quoted field";
+                        break;
+                    }
+                } else {
+                    while (p < end && data[p] != ',') p++;
+                    fieldEnd = p;
+                    while (fieldEnd > fieldStart && (data[fieldEnd - 1] == ' ' || data[fieldEnd - 1] == '\t')) fieldEnd--;
+                }
+                if (fields < 3) {
+                    starts[fields] = fieldStart;
+                    ends[fields] = fieldEnd;
+                }
+                fields++;
+                if (p >= end) break;
+                p++; // the comma
+            }
+            if (problem == null && fields != 3) {
+                problem = "expected 3 fields (code,name,price), found " + fields;
+            }
+            if (problem != null) {
+                result.error(line, problem);
+                continue;
+            }
+
+            String code = code(data, starts[0], ends[0]);
+            if (code == null) {
+                result.error(line, "code must be 1 to " + MAX_CODE_LENGTH + " letters, digits, '-' or '_'");
+                continue;
+            }
+            int nameLength = ends[1] - starts[1];
+            if (nameLength == 0) {
+                result.error(line, "name is empty");
+                continue;
+            }
+            String name = new String(data, starts[1], nameLength, StandardCharsets.UTF_8);
+            if (name.length() > MAX_NAME_LENGTH || hasControl(name)) {
+                result.error(line, "name must be at most " + MAX_NAME_LENGTH + " characters with no control characters");
+                continue;
+            }
+            long price = price(data, starts[2], ends[2]);
+            if (price < 0) {
+                result.error(line, "price must be an amount from 0 to " + Money.format(MenuItem.MAX_PRICE_CENTS) + " with at most two decimals");
+                continue;
+            }
+            if (result.items.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[result.items.size()] = line;
+            result.items.add(new MenuItem(code, name, price));
+        }
+
+        // Codes are matched ignoring case, so "n" and "N" are the same item
+        result.index = MenuIndex.build(result.items);
+        if (result.index.size() != result.items.size()) {
+            for (int i = 0; i < result.items.size(); i++) {
+                int first = result.index.find(result.items.get(i).getSku());
+                if (first != i) {
+                    result.error(lines[i], "duplicate code " + result.items.get(i).getSku() + " (first on line " + lines[first] + ")");
+                }
+            }
+        }
+        if (result.items.isEmpty() && result.errorCount == 0) {
+            result.error(line, "the catalogue has no items");
+        }
+        return result;
+    }
+
+    /**
+     * Writes the items to the file, quoting names where needed. The file is
+     * written aside and moved into place, so readers never see half a menu.
+     */
+    public static void write(Path file, List<MenuItem> items) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder line = new StringBuilder(64);
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (MenuItem item : items) {
+                line.setLength(0);
+                line.append(item.getSku()).append(',');
+                appendName(line, item.getName());
+                Money.append(line.append(','), item.getPriceCents()).append(System.lineSeparator());
+                writer.append(line);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void appendName(StringBuilder line, String name) {
+        boolean quote = name.isEmpty() || name.charAt(0) == ' ' || name.charAt(name.length() - 1) == ' '
+                || name.indexOf(',') >= 0 || name.indexOf('"') >= 0;
+        if (!quote) {
+            line.append(name);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static String code(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > MAX_CODE_LENGTH) return null;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            boolean ok = (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-' || b == '_';
+            if (!ok) return null;
+        }
+        return new String(data, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // The amount in cents, or -1 if it isn't a plain non-negative amount in range
+    private static long price(byte[] data, int start, int end) {
+        long units = 0;
+        int fraction = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9') {
+                digits = true;
+                if (fractionDigits < 0) {
+                    units = units * 10 + (b - '0');
+                    if (units * 100 > MenuItem.MAX_PRICE_CENTS) return -1;
+                } else if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (b - '0');
+                    fractionDigits++;
+                } else {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (!digits) return -1;
+        long cents = units * 100 + (fractionDigits == 1 ? fraction * 10 : fraction);
+        return cents > MenuItem.MAX_PRICE_CENTS ? -1 : cents;
+    }
+
+    private static boolean isBlank(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] != ' ' && data[i] != '\t') return false;
+        }
+        return true;
+    }
+
+    private static boolean isHeader(byte[] data, int start, int end) {
+        String text = new String(data, start, end - start, StandardCharsets.ISO_8859_1).replace(" ", "");
+        return text.equalsIgnoreCase("code,name,price");
+    }
+
+    private static boolean hasControl(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) < 0x20 || name.charAt(i) == 0x7f) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+package com.foodregistry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, case-insensitive code-to-position index over a menu.
+ * Single ASCII character codes go through a direct 128-entry table; every
+ * code (including multi-character SKUs) is also in an open-addressing hash
+ * table, so lookups stay constant-time on large catalogues.
+ * Build a new index whenever the menu list changes and publish it in one write.
+ */
+public final class MenuIndex {
+    private static final int ASCII = 128;
+
+    private final int[] byChar = new int[ASCII];
+    private final String[] keys;     // upper-cased codes
+    private final int[] positions;
+    private final int mask;
+    private final int size;
+
+    private MenuIndex(List<MenuItem> menu) {
+        Arrays.fill(byChar, -1);
+        int capacity = Integer.highestOneBit(Math.max(4, menu.size() * 2 - 1)) << 1;
+        keys = new String[capacity];
+        positions = new int[capacity];
+        mask = capacity - 1;
+
+        int count = 0;
+        for (int i = 0; i < menu.size(); i++) {
+            String sku = menu.get(i).getSku();
+            if (sku.length() == 1 && sku.charAt(0) < ASCII) {
+                int c = Character.toUpperCase(sku.charAt(0));
+                if (byChar[c] == -1) byChar[c] = i;
+            }
+            // First item with a code wins, as with the old linear scan
+            int slot = hash(sku) & mask;
+            while (keys[slot] != null && !equalsIgnoreCase(keys[slot], sku)) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                keys[slot] = fold(sku);
+                positions[slot] = i;
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    public static MenuIndex build(List<MenuItem> menu) {
+        return new MenuIndex(menu);
+    }
+
+    /**
+     * @param code A single-character item code, any case.
+     * @return The item's menu position, or -1.
+     */
+    public int find(char code) {
+        if (code < ASCII) return byChar[Character.toUpperCase(code)];
+        return find(String.valueOf(code));
+    }
+
+    /**
+     * @param sku An item code of any length, any case.
+     * @return The item's menu position, or -1.
+     */
+    public int find(CharSequence sku) {
+        if (sku == null || sku.length() == 0) return -1;
+        if (sku.length() == 1) {
+            char c = sku.charAt(0);
+            if (c < ASCII) return byChar[Character.toUpperCase(c)];
+        }
+        int slot = hash(sku) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (equalsIgnoreCase(key, sku)) return positions[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The code upper-cased one char at a time, as lookups compare it;
+     *         unlike String.toUpperCase this never depends on the default locale.
+     */
+    static String fold(CharSequence sku) {
+        char[] chars = new char[sku.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toUpperCase(sku.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static int hash(CharSequence s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + Character.toUpperCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String upperKey, CharSequence s) {
+        if (upperKey.length() != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (upperKey.charAt(i) != Character.toUpperCase(s.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -1,29 +1,73 @@
 package com.foodregistry;
 
-public class MenuItem {
-    private char code;
-    private String name;
-    private float price;
+/**
+ * One menu entry. Items are immutable: a price change makes a new item.
+ */
+public final class MenuItem {
+    // The highest price an item may have, RM 1,000,000.00; with at most 999 a line, totals stay far from overflow
+    public static final long MAX_PRICE_CENTS = 100_000_000L;
+
+    private final char code;
+    private final String sku;
+    private final String name;
+    private final long priceCents;
 
     public MenuItem(char c, String n, float p) {
-        this.code = c;
+        this(String.valueOf(c), n, Money.fromFloat(p));
+    }
+
+    /**
+     * Creates an item with a multi-character code such as "NL2" or "CR-L".
+     * getCode() then returns the first character.
+     */
+    public MenuItem(String sku, String n, float p) {
+        this(sku, n, Money.fromFloat(p));
+    }
+
+    public MenuItem(String sku, String n, long priceCents) {
+        if (sku == null || sku.isEmpty()) {
+            throw new IllegalArgumentException("Menu item code must not be empty");
+        }
+        this.code = sku.charAt(0);
+        this.sku = sku;
         this.name = n;
-        this.price = p;
+        this.priceCents = priceCents;
     }
 
     public char getCode() {
         return code;
     }
 
+    /**
+     * Gets the full item code; the same as getCode() for single-character codes.
+     */
+    public String getSku() {
+        return sku;
+    }
+
     public String getName() {
         return name;
     }
 
     public float getPrice() {
-        return price;
+        return Money.toFloat(priceCents);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    /**
+     * @return A copy of this item at the new price.
+     */
+    public MenuItem withPrice(float price) {
+        return withPriceCents(Money.fromFloat(price));
     }
 
-    public void setPrice(float price) {
-        this.price = price;
+    /**
+     * @return A copy of this item at the new price.
+     */
+    public MenuItem withPriceCents(long priceCents) {
+        return new MenuItem(sku, name, priceCents);
     }
 }
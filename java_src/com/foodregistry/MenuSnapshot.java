@@ -0,0 +1,84 @@
+package com.foodregistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One immutable version of the menu: its items and their code index.
+ *
+ * A price change or a catalogue import publishes a new snapshot with the
+ * next version number, so readers take the current snapshot with one
+ * volatile read and see either all of a change or none of it. Orders keep
+ * the snapshot they were priced against, so receipts, refunds and the report
+ * always use the prices the customer paid.
+ */
+public final class MenuSnapshot {
+    private final long version;
+    private final List<MenuItem> items;
+    private final MenuIndex index;
+
+    public MenuSnapshot(long version, List<MenuItem> items) {
+        this.version = version;
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.index = MenuIndex.build(this.items);
+    }
+
+    // For a list nobody else holds whose index is already built
+    MenuSnapshot(long version, List<MenuItem> items, MenuIndex index) {
+        this.version = version;
+        this.items = Collections.unmodifiableList(items);
+        this.index = index;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The items in menu order; unmodifiable.
+     */
+    public List<MenuItem> getItems() {
+        return items;
+    }
+
+    public MenuItem get(int index) {
+        return items.get(index);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * @return The item's menu position, or -1.
+     */
+    public int find(char code) {
+        return index.find(code);
+    }
+
+    /**
+     * @return The item's menu position, or -1.
+     */
+    public int find(CharSequence sku) {
+        return index.find(sku);
+    }
+
+    /**
+     * @return Whether both versions have the same items in the same positions,
+     *         as they do when one was only repriced from the other.
+     */
+    public boolean sameLayout(MenuSnapshot other) {
+        return other != null && other.index == index;
+    }
+
+    /**
+     * @return The next version, with the item at the given position repriced.
+     */
+    public MenuSnapshot withPrice(int position, long priceCents) {
+        List<MenuItem> next = new ArrayList<>(items);
+        next.set(position, items.get(position).withPriceCents(priceCents));
+        // Codes are unchanged, so the index carries over
+        return new MenuSnapshot(version + 1, next, index);
+    }
+}
@@ -0,0 +1,151 @@
+package com.foodregistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named timers and gauges, written out in the Prometheus text format.
+ *
+ * Timers are registered once, up front, and callers keep the returned
+ * histogram, so recording is a few atomic increments with no lookup or
+ * allocation. Gauges and counters are read only when the metrics are written.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private enum Kind { SUMMARY, GAUGE, COUNTER }
+
+    private static final class Series {
+        final String name;
+        final String labels; // e.g. action="add", or empty
+        final String help;
+        final Kind kind;
+        final LatencyHistogram timer;
+        final DoubleSupplier value;
+
+        Series(String name, String labels, String help, Kind kind, LatencyHistogram timer, DoubleSupplier value) {
+            this.name = name;
+            this.labels = labels;
+            this.help = help;
+            this.kind = kind;
+            this.timer = timer;
+            this.value = value;
+        }
+    }
+
+    private final List<Series> series = new ArrayList<>(); // guarded by this
+    private boolean jvmRegistered; // guarded by this
+
+    /**
+     * Registers a timer, reported in seconds.
+     * @param name The metric name, e.g. foodregistry_payment_seconds.
+     * @param labels Prometheus labels without braces, e.g. step="audit", or "" for none.
+     * @return The histogram to record nanoseconds into.
+     */
+    public synchronized LatencyHistogram timer(String name, String labels, String help) {
+        for (Series s : series) {
+            if (s.name.equals(name) && s.labels.equals(labels) && s.timer != null) return s.timer;
+        }
+        return timer(name, labels, help, new LatencyHistogram());
+    }
+
+    /**
+     * Registers a histogram that something else records into.
+     * @return The histogram.
+     */
+    public synchronized LatencyHistogram timer(String name, String labels, String help, LatencyHistogram timer) {
+        series.add(new Series(name, labels, help, Kind.SUMMARY, timer, null));
+        return timer;
+    }
+
+    /**
+     * Registers a value that can go up and down, read when the metrics are written.
+     */
+    public synchronized void gauge(String name, String labels, String help, DoubleSupplier value) {
+        series.add(new Series(name, labels, help, Kind.GAUGE, null, value));
+    }
+
+    /**
+     * Registers a running total, read when the metrics are written.
+     */
+    public synchronized void counter(String name, String labels, String help, DoubleSupplier value) {
+        series.add(new Series(name, labels, help, Kind.COUNTER, null, value));
+    }
+
+    /**
+     * Adds heap, non-heap and per-collector GC figures for this JVM.
+     */
+    public synchronized void registerJvm() {
+        if (jvmRegistered) return;
+        jvmRegistered = true;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_memory_used_bytes", "area=\"heap\"", "Memory in use.", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_used_bytes", "area=\"nonheap\"", "Memory in use.", () -> memory.getNonHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_committed_bytes", "area=\"heap\"", "Memory reserved by the JVM.", () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_max_bytes", "area=\"heap\"", "Largest the heap may grow.", () -> memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + gc.getName() + "\"";
+            counter("jvm_gc_collections_total", labels, "Collections run.", gc::getCollectionCount);
+            counter("jvm_gc_collection_seconds_total", labels, "Time spent collecting.", () -> gc.getCollectionTime() / 1000.0);
+        }
+        gauge("jvm_threads_live", "", "Live threads.", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    /**
+     * Writes every series, grouped by metric name in registration order.
+     */
+    public void writeTo(StringBuilder out) {
+        List<Series> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(series);
+        }
+        boolean[] written = new boolean[snapshot.size()];
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (written[i]) continue;
+            Series first = snapshot.get(i);
+            out.append("# HELP ").append(first.name).append(' ').append(first.help).append('\n');
+            out.append("# TYPE ").append(first.name).append(' ').append(first.kind.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (int j = i; j < snapshot.size(); j++) {
+                Series s = snapshot.get(j);
+                if (written[j] || !s.name.equals(first.name)) continue;
+                written[j] = true;
+                if (s.kind == Kind.SUMMARY) {
+                    writeSummary(out, s);
+                } else {
+                    line(out, s.name, s.labels, null, s.value.getAsDouble());
+                }
+            }
+        }
+    }
+
+    private static void writeSummary(StringBuilder out, Series s) {
+        LatencyHistogram timer = s.timer;
+        for (double q : QUANTILES) {
+            line(out, s.name, s.labels, "quantile=\"" + q + "\"", timer.getValueAtPercentile(q * 100) / 1e9);
+        }
+        line(out, s.name + "_sum", s.labels, null, timer.getSumNanos() / 1e9);
+        line(out, s.name + "_count", s.labels, null, timer.getCount());
+    }
+
+    private static void line(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+        boolean hasLabels = !labels.isEmpty();
+        if (hasLabels || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) out.append(hasLabels ? "," : "").append(extra);
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,104 @@
+package com.foodregistry;
+
+/**
+ * Money as a long count of cents (sen). Amounts are kept as plain longs so
+ * arithmetic and formatting never allocate; this class only holds the
+ * conversions.
+ */
+public final class Money {
+    private static final long[] POWERS = {1, 10, 100};
+
+    private Money() {}
+
+    /**
+     * Converts a float amount (e.g. from legacy callers) to the nearest cent.
+     */
+    public static long fromFloat(float amount) {
+        return Math.round((double) amount * 100.0);
+    }
+
+    public static float toFloat(long cents) {
+        return cents / 100f;
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "8.5" or "-0.05" exactly.
+     * Digits beyond the second decimal place round half-up.
+     * @throws NumberFormatException if the text is not a plain decimal number.
+     */
+    public static long parse(CharSequence text) {
+        if (text == null) throw new NumberFormatException("null");
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) throw new NumberFormatException("Empty amount");
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (!seenPoint) {
+                    units = units * 10 + (c - '0');
+                    if (units > Long.MAX_VALUE / 1000) throw new NumberFormatException("Amount too large: " + text);
+                } else if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+        }
+        if (!seenDigit) throw new NumberFormatException("Not an amount: " + text);
+
+        long cents = units * 100 + fraction * POWERS[2 - Math.min(fractionDigits, 2)];
+        if (roundUp) cents++;
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Appends the amount with exactly two decimals, e.g. 1234 -> "12.34".
+     */
+    public static StringBuilder append(StringBuilder sb, long cents) {
+        long units = cents / 100;
+        int fraction = (int) (cents % 100);
+        if (cents < 0) {
+            sb.append('-');
+            units = -units;
+            fraction = -fraction;
+        }
+        sb.append(units).append('.');
+        sb.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        return sb;
+    }
+
+    public static String format(long cents) {
+        return append(new StringBuilder(12), cents).toString();
+    }
+
+    /**
+     * Computes a percentage of an amount, rounding half-up to the cent.
+     */
+    public static long percentOf(long cents, int percent) {
+        long scaled = cents * percent;
+        return scaled >= 0 ? (scaled + 50) / 100 : -((-scaled + 50) / 100);
+    }
+}
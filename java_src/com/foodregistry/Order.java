@@ -1,73 +1,246 @@
 package com.foodregistry;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Order {
-    private List<Integer> quantities;
+    // Menus larger than this default to sparse storage
+    public static final int SPARSE_THRESHOLD = 256;
+    // No line holds more than this; larger quantities are turned away before they reach an order
+    public static final int MAX_LINE_QUANTITY = 999;
+
     private int itemCount;
-    private float subtotal;
-    private float sst;
-    private float total;
-    private final float SST_RATE = 0.10f;
+    private boolean sparse;
+    // The menu version this order is priced against, if it was created from one
+    private MenuSnapshot menu;
+    // Dense mode: quantities[menuIndex]. Sparse mode: (lineIndexes[k], quantities[k]) sorted by index.
+    private int[] quantities;
+    private int[] lineIndexes;
+    private int lineCount;
+    // Amounts in cents; SST is rounded per order so receipts and totals reconcile
+    private long subtotal;
+    private long sst;
+    private long total;
+    private static final int SST_PERCENT = 10;
 
     public Order(int count) {
-        this.itemCount = count;
-        this.quantities = new ArrayList<>(count);
-        for (int i = 0; i < count; i++) {
-            quantities.add(0);
-        }
+        this(count, count > SPARSE_THRESHOLD);
+    }
+
+    public Order(int count, boolean sparse) {
+        allocate(count, sparse);
         this.subtotal = 0;
         this.sst = 0;
         this.total = 0;
     }
 
+    /**
+     * Creates an empty order priced against the given menu version.
+     */
+    public Order(MenuSnapshot menu) {
+        this(menu.size());
+        this.menu = menu;
+    }
+
     // Copy constructor
     public Order(Order other) {
         this.itemCount = other.itemCount;
-        this.quantities = new ArrayList<>(other.quantities);
+        this.sparse = other.sparse;
+        this.quantities = other.quantities.clone();
+        this.lineIndexes = other.sparse ? other.lineIndexes.clone() : null;
+        this.lineCount = other.lineCount;
+        this.menu = other.menu;
         this.subtotal = other.subtotal;
         this.sst = other.sst;
         this.total = other.total;
     }
 
+    private void allocate(int count, boolean sparse) {
+        this.itemCount = count;
+        this.sparse = sparse;
+        if (sparse) {
+            this.lineIndexes = new int[4];
+            this.quantities = new int[4];
+        } else {
+            this.lineIndexes = null;
+            this.quantities = new int[count];
+        }
+    }
+
+    /**
+     * @return The menu version this order is priced against, or null if it was created without one.
+     */
+    public MenuSnapshot getMenu() {
+        return menu;
+    }
+
+    /**
+     * Prices an empty order against a newer menu version, so an order started
+     * after a price change uses the new prices.
+     * @throws IllegalStateException if the order already has items.
+     */
+    public void pin(MenuSnapshot menu) {
+        if (lineCount != 0) {
+            throw new IllegalStateException("Cannot change the menu of an order that has items");
+        }
+        if (menu.size() != itemCount) {
+            allocate(menu.size(), menu.size() > SPARSE_THRESHOLD);
+        }
+        this.menu = menu;
+    }
+
+    /**
+     * Adds to a line without touching the totals; call calculateTotals afterwards.
+     * Quantities never go below zero.
+     */
     public void addItem(int index, int quantity) {
-        if (index >= 0 && index < itemCount) {
-            int current = quantities.get(index);
-            int newQty = current + quantity;
-            if (newQty < 0) newQty = 0;
-            quantities.set(index, newQty);
+        applyDelta(index, quantity);
+    }
+
+    /**
+     * Adds to a line and updates the totals from the change alone.
+     * @param index The menu index.
+     * @param quantity The quantity to add (negative to remove).
+     * @param unitPriceCents The line's unit price in cents.
+     */
+    public void addItem(int index, int quantity, long unitPriceCents) {
+        int applied = applyDelta(index, quantity);
+        if (applied != 0) {
+            subtotal += unitPriceCents * applied;
+            updateTax();
+        }
+    }
+
+    public void addItem(int index, int quantity, float unitPrice) {
+        addItem(index, quantity, Money.fromFloat(unitPrice));
+    }
+
+    // Returns the change actually applied after clamping to 0..MAX_LINE_QUANTITY
+    private int applyDelta(int index, int quantity) {
+        if (index < 0 || index >= itemCount || quantity == 0) return 0;
+        if (!sparse) {
+            int current = quantities[index];
+            int newQty = clamp(current, quantity);
+            quantities[index] = newQty;
+            if (current == 0 && newQty > 0) lineCount++;
+            else if (current > 0 && newQty == 0) lineCount--;
+            return newQty - current;
+        }
+
+        int pos = Arrays.binarySearch(lineIndexes, 0, lineCount, index);
+        if (pos >= 0) {
+            int current = quantities[pos];
+            int newQty = clamp(current, quantity);
+            if (newQty == 0) {
+                System.arraycopy(lineIndexes, pos + 1, lineIndexes, pos, lineCount - pos - 1);
+                System.arraycopy(quantities, pos + 1, quantities, pos, lineCount - pos - 1);
+                lineCount--;
+                return -current;
+            }
+            quantities[pos] = newQty;
+            return newQty - current;
+        }
+        if (quantity < 0) return 0;
+        quantity = clamp(0, quantity);
+        int insert = -pos - 1;
+        if (lineCount == lineIndexes.length) {
+            lineIndexes = Arrays.copyOf(lineIndexes, lineCount * 2);
+            quantities = Arrays.copyOf(quantities, lineCount * 2);
         }
+        System.arraycopy(lineIndexes, insert, lineIndexes, insert + 1, lineCount - insert);
+        System.arraycopy(quantities, insert, quantities, insert + 1, lineCount - insert);
+        lineIndexes[insert] = index;
+        quantities[insert] = quantity;
+        lineCount++;
+        return quantity;
+    }
+
+    // Added in long so a huge quantity can't wrap around
+    private static int clamp(int current, int quantity) {
+        return (int) Math.max(0, Math.min(MAX_LINE_QUANTITY, (long) current + quantity));
     }
 
     public int getQuantity(int index) {
-        return (index >= 0 && index < itemCount) ? quantities.get(index) : 0;
+        if (index < 0 || index >= itemCount) return 0;
+        if (!sparse) return quantities[index];
+        int pos = Arrays.binarySearch(lineIndexes, 0, lineCount, index);
+        return pos >= 0 ? quantities[pos] : 0;
+    }
+
+    /**
+     * Finds the next ordered line, for walking only the lines an order actually has:
+     * {@code for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1))}
+     * @param fromIndex The menu index to start at.
+     * @return The first menu index at or after fromIndex with a non-zero quantity, or -1.
+     */
+    public int nextLine(int fromIndex) {
+        if (lineCount == 0 || fromIndex < 0) return -1;
+        if (!sparse) {
+            for (int i = fromIndex; i < itemCount; i++) {
+                if (quantities[i] != 0) return i;
+            }
+            return -1;
+        }
+        int pos = Arrays.binarySearch(lineIndexes, 0, lineCount, fromIndex);
+        if (pos < 0) pos = -pos - 1;
+        return pos < lineCount ? lineIndexes[pos] : -1;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Recomputes the totals from the pinned menu version's prices.
+     */
+    public void calculateTotals() {
+        calculateTotals(menu.getItems());
     }
 
     public void calculateTotals(List<MenuItem> menu) {
         subtotal = 0;
-        for (int i = 0; i < itemCount; i++) {
-            subtotal += menu.get(i).getPrice() * quantities.get(i);
+        for (int i = nextLine(0); i >= 0; i = nextLine(i + 1)) {
+            subtotal += menu.get(i).getPriceCents() * getQuantity(i);
         }
-        sst = subtotal * SST_RATE;
+        updateTax();
+    }
+
+    /**
+     * Puts back totals recorded when the order was paid, so a rebuilt order
+     * matches its receipt even if prices have changed since.
+     */
+    void restoreTotals(long subtotalCents, long sstCents) {
+        subtotal = subtotalCents;
+        sst = sstCents;
+        total = subtotalCents + sstCents;
+    }
+
+    private void updateTax() {
+        sst = Money.percentOf(subtotal, SST_PERCENT);
         total = subtotal + sst;
     }
 
-    public float getSubtotal() { return subtotal; }
-    public float getSST() { return sst; }
-    public float getTotal() { return total; }
+    public long getSubtotalCents() { return subtotal; }
+    public long getSSTCents() { return sst; }
+    public long getTotalCents() { return total; }
+
+    public float getSubtotal() { return Money.toFloat(subtotal); }
+    public float getSST() { return Money.toFloat(sst); }
+    public float getTotal() { return Money.toFloat(total); }
 
     public boolean isEmpty() {
-        for (int qty : quantities) {
-            if (qty > 0) return false;
-        }
-        return true;
+        return lineCount == 0;
     }
 
     public void clear() {
-        for (int i = 0; i < itemCount; i++) {
-            quantities.set(i, 0);
+        if (lineCount > 0 && !sparse) {
+            Arrays.fill(quantities, 0);
         }
+        lineCount = 0;
         subtotal = 0;
         sst = 0;
         total = 0;
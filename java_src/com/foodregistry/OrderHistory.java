@@ -0,0 +1,120 @@
+package com.foodregistry;
+
+import java.util.Arrays;
+
+/**
+ * The day's orders, keyed by receipt number.
+ *
+ * Receipt numbers are handed out in sequence, so orders sit in fixed-size
+ * segments indexed by number: lookups and refunds are O(1), and growing only
+ * copies the short array of segment references. A refund leaves the order in
+ * place and sets its tombstone bit, so order #N stays receipt #N.
+ * Not thread-safe; Restaurant guards it with its history lock.
+ */
+class OrderHistory {
+    private static final int SEGMENT_BITS = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final class Segment {
+        final Order[] orders = new Order[SEGMENT_SIZE];
+        final long[] refunded = new long[SEGMENT_SIZE / 64];
+    }
+
+    private Segment[] segments = new Segment[16];
+    private int size;
+    private int refundedCount;
+    private int lowest;
+    private int highest;
+
+    /**
+     * Stores an order under its receipt number, replacing any order already there.
+     */
+    void put(int orderNumber, Order order) {
+        if (orderNumber < 1) throw new IllegalArgumentException("Order numbers start at 1: " + orderNumber);
+        int s = orderNumber >>> SEGMENT_BITS;
+        if (s >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(s + 1, segments.length * 2));
+        }
+        Segment segment = segments[s];
+        if (segment == null) {
+            segment = segments[s] = new Segment();
+        }
+        int i = orderNumber & SEGMENT_MASK;
+        if (segment.orders[i] == null) {
+            size++;
+        } else if (clearRefunded(segment, i)) {
+            refundedCount--;
+        }
+        segment.orders[i] = order;
+        if (orderNumber > highest) highest = orderNumber;
+        if (lowest == 0 || orderNumber < lowest) lowest = orderNumber;
+    }
+
+    /**
+     * @return The order billed under the number, refunded or not, or null if there is none.
+     */
+    Order get(int orderNumber) {
+        Segment segment = segment(orderNumber);
+        return segment == null ? null : segment.orders[orderNumber & SEGMENT_MASK];
+    }
+
+    boolean isRefunded(int orderNumber) {
+        Segment segment = segment(orderNumber);
+        int i = orderNumber & SEGMENT_MASK;
+        return segment != null && (segment.refunded[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Marks an order refunded.
+     * @return The order, or null if there is no such order or it was already refunded.
+     */
+    Order refund(int orderNumber) {
+        Segment segment = segment(orderNumber);
+        if (segment == null) return null;
+        int i = orderNumber & SEGMENT_MASK;
+        Order order = segment.orders[i];
+        if (order == null || (segment.refunded[i >>> 6] & (1L << i)) != 0) return null;
+        segment.refunded[i >>> 6] |= 1L << i;
+        refundedCount++;
+        return order;
+    }
+
+    /**
+     * @return Orders stored, including refunded ones.
+     */
+    int size() {
+        return size;
+    }
+
+    int getRefundedCount() {
+        return refundedCount;
+    }
+
+    /**
+     * @return The lowest receipt number stored, or 0 if there are none.
+     */
+    int getLowestNumber() {
+        return lowest;
+    }
+
+    /**
+     * @return The highest receipt number stored, or 0 if there are none.
+     */
+    int getHighestNumber() {
+        return highest;
+    }
+
+    private Segment segment(int orderNumber) {
+        if (orderNumber < 1) return null;
+        int s = orderNumber >>> SEGMENT_BITS;
+        return s < segments.length ? segments[s] : null;
+    }
+
+    private static boolean clearRefunded(Segment segment, int i) {
+        long bit = 1L << i;
+        boolean was = (segment.refunded[i >>> 6] & bit) != 0;
+        segment.refunded[i >>> 6] &= ~bit;
+        return was;
+    }
+}
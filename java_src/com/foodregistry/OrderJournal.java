@@ -0,0 +1,390 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, checksummed record of every paid order and refund, kept in
+ * memory-mapped segment files so sales survive a restart.
+ *
+ * Segment layout: an 8-byte header (magic, version) followed by records of
+ * [int payloadLength][int crc32][payload], ending at the first zero length.
+ * A record that fails its checksum is treated as a torn write: replay stops
+ * there and the rest of that segment is wiped before new records go in.
+ * A payment stores the amounts in cents, the order's subtotal and SST, and
+ * each line as a length-prefixed item code and a quantity.
+ *
+ * Once the days a segment covers are rolled up, retireBefore deletes it and
+ * notes the highest order number so far in a checkpoint file, so replay only
+ * reads the segments still needed and numbering carries on from the checkpoint.
+ */
+public class OrderJournal implements AutoCloseable {
+
+    /**
+     * Receives journal records in the order they were written.
+     */
+    public interface Listener {
+        void onPayment(int orderNumber, long timestampMillis, long amountPaidCents, long subtotalCents, long sstCents,
+                       String[] codes, int[] quantities, int lineCount);
+        void onRefund(int orderNumber, long timestampMillis);
+
+        /**
+         * Called before any record with the highest order number in the segments already retired.
+         */
+        default void onCheckpoint(int lastOrderNumber) {
+        }
+    }
+
+    public static final String DIR_PROPERTY = "foodregistry.journal.dir";
+    public static final String FORCE_PROPERTY = "foodregistry.journal.force";
+
+    static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int MAGIC = 0x46524A31; // "FRJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte TYPE_PAYMENT = 1;
+    private static final byte TYPE_REFUND = 2;
+    private static final int PAYMENT_FIXED_SIZE = 1 + 4 + 8 + 8 + 8 + 8 + 2;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int CHECKPOINT_MAGIC = 0x4652434B; // "FRCK"
+    private static final int CHECKPOINT_SIZE = 4 + 4 + 4 + 4;
+
+    private final Path directory;
+    private final boolean forceEachRecord;
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    // Each segment's latest record time, Long.MIN_VALUE while it has none
+    private final Map<Integer, Long> lastTimestamps = new TreeMap<>();
+    private byte[] scratch = new byte[256];
+
+    public OrderJournal(Path directory) throws IOException {
+        this(directory, Boolean.getBoolean(FORCE_PROPERTY));
+    }
+
+    /**
+     * @param directory Where segment files live; created if missing.
+     * @param forceEachRecord Flush each record to disk before returning from append.
+     *        Without it records survive a process crash but not a power cut.
+     */
+    public OrderJournal(Path directory, boolean forceEachRecord) throws IOException {
+        this.directory = directory;
+        this.forceEachRecord = forceEachRecord;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Replays every intact record, then positions the journal for appending.
+     * Must be called once before the first append.
+     * @param listener Receives the records.
+     * @return The number of records replayed.
+     */
+    public synchronized int replay(Listener listener) throws IOException {
+        int checkpoint = readCheckpoint();
+        if (checkpoint > 0) listener.onCheckpoint(checkpoint);
+        List<Path> segments = listSegments();
+        int records = 0;
+        String[] codes = new String[16];
+        int[] quantities = new int[16];
+        StringBuilder code = new StringBuilder();
+
+        for (int s = 0; s < segments.size(); s++) {
+            Path path = segments.get(s);
+            MappedByteBuffer buf = map(path);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("Not a journal segment: " + path);
+            }
+            int index = segmentNumber(path);
+            long last = Long.MIN_VALUE;
+            int pos = HEADER_SIZE;
+            while (pos + RECORD_HEADER_SIZE <= buf.capacity()) {
+                int length = buf.getInt(pos);
+                if (length <= 0 || pos + RECORD_HEADER_SIZE + length > buf.capacity()) break;
+                int expectedCrc = buf.getInt(pos + 4);
+                byte[] payload = payload(length);
+                buf.get(pos + RECORD_HEADER_SIZE, payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != expectedCrc) break;
+
+                int p = pos + RECORD_HEADER_SIZE;
+                byte type = buf.get(p);
+                int orderNumber = buf.getInt(p + 1);
+                long timestamp = buf.getLong(p + 5);
+                last = Math.max(last, timestamp);
+                if (type == TYPE_PAYMENT) {
+                    long amountPaid = buf.getLong(p + 13);
+                    long subtotal = buf.getLong(p + 21);
+                    long sst = buf.getLong(p + 29);
+                    int lineCount = buf.getShort(p + 37);
+                    int q = p + PAYMENT_FIXED_SIZE;
+                    if (lineCount > codes.length) {
+                        codes = new String[lineCount];
+                        quantities = new int[lineCount];
+                    }
+                    for (int i = 0; i < lineCount; i++) {
+                        int len = buf.get(q) & 0xff;
+                        code.setLength(0);
+                        for (int c = 0; c < len; c++) code.append(buf.getChar(q + 1 + c * 2));
+                        codes[i] = code.toString();
+                        q += 1 + len * 2;
+                        quantities[i] = buf.getInt(q);
+                        q += 4;
+                    }
+                    listener.onPayment(orderNumber, timestamp, amountPaid, subtotal, sst, codes, quantities, lineCount);
+                } else if (type == TYPE_REFUND) {
+                    listener.onRefund(orderNumber, timestamp);
+                }
+                records++;
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            lastTimestamps.put(index, last);
+
+            if (s == segments.size() - 1) {
+                // Wipe whatever follows the last good record so a torn tail can't resurface
+                for (int i = pos; i < buf.capacity(); i++) {
+                    if (buf.get(i) != 0) {
+                        for (int j = pos; j < buf.capacity(); j++) buf.put(j, (byte) 0);
+                        buf.force();
+                        break;
+                    }
+                }
+                segment = buf;
+                segment.position(pos);
+                segmentIndex = index;
+            }
+        }
+
+        if (segment == null) openSegment(1);
+        return records;
+    }
+
+    /**
+     * Appends a paid order.
+     * @param orderNumber The receipt number.
+     * @param amountPaidCents The amount tendered, in cents.
+     * @param order The order; only non-zero lines are stored, by menu code (at most 255 chars).
+     * @param menu The menu the order's line indexes refer to.
+     */
+    public void appendPayment(int orderNumber, long amountPaidCents, Order order, List<MenuItem> menu) throws IOException {
+        appendPayment(orderNumber, amountPaidCents, order, menu, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a paid order with the time it was paid, so other records of it can agree on the day.
+     */
+    public synchronized void appendPayment(int orderNumber, long amountPaidCents, Order order, List<MenuItem> menu,
+                                           long timestampMillis) throws IOException {
+        int lineCount = order.getLineCount();
+        int length = PAYMENT_FIXED_SIZE;
+        for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+            length += 1 + codeLength(menu.get(i)) * 2 + 4;
+        }
+        MappedByteBuffer buf = reserve(length);
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER_SIZE);
+        buf.put(TYPE_PAYMENT);
+        buf.putInt(orderNumber);
+        buf.putLong(timestampMillis);
+        buf.putLong(amountPaidCents);
+        buf.putLong(order.getSubtotalCents());
+        buf.putLong(order.getSSTCents());
+        buf.putShort((short) lineCount);
+        for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+            String sku = menu.get(i).getSku();
+            int len = codeLength(menu.get(i));
+            buf.put((byte) len);
+            for (int c = 0; c < len; c++) buf.putChar(sku.charAt(c));
+            buf.putInt(order.getQuantity(i));
+        }
+        commit(buf, start, length, timestampMillis);
+    }
+
+    /**
+     * Appends a refund.
+     * @param orderNumber The order number the refund was requested for.
+     */
+    public void appendRefund(int orderNumber) throws IOException {
+        appendRefund(orderNumber, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a refund with the time it was given.
+     */
+    public synchronized void appendRefund(int orderNumber, long timestampMillis) throws IOException {
+        int length = 1 + 4 + 8;
+        MappedByteBuffer buf = reserve(length);
+        int start = buf.position();
+        buf.position(start + RECORD_HEADER_SIZE);
+        buf.put(TYPE_REFUND);
+        buf.putInt(orderNumber);
+        buf.putLong(timestampMillis);
+        commit(buf, start, length, timestampMillis);
+    }
+
+    /**
+     * Deletes the segments holding only records from before a time, once those
+     * days are rolled up and replay no longer needs them. The current segment
+     * is closed first if it qualifies, so the next record starts a new one.
+     * @param cutoffMillis Segments whose latest record is earlier than this go.
+     * @param lastOrderNumber The highest order number billed so far, kept in the checkpoint.
+     * @return The number of segments deleted.
+     */
+    public synchronized int retireBefore(long cutoffMillis, int lastOrderNumber) throws IOException {
+        if (segment == null) {
+            throw new IllegalStateException("Journal must be replayed before retiring segments");
+        }
+        long current = lastTimestamps.get(segmentIndex);
+        if (current != Long.MIN_VALUE && current < cutoffMillis) {
+            segment.force();
+            openSegment(segmentIndex + 1);
+        }
+        List<Integer> retired = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : lastTimestamps.entrySet()) {
+            if (entry.getKey() != segmentIndex && entry.getValue() < cutoffMillis) retired.add(entry.getKey());
+        }
+        if (retired.isEmpty()) return 0;
+        // The checkpoint goes in first: a crash before the deletes only leaves segments to replay again
+        writeCheckpoint(Math.max(lastOrderNumber, readCheckpoint()));
+        for (int index : retired) {
+            Files.deleteIfExists(segmentPath(index));
+            lastTimestamps.remove(index);
+        }
+        return retired.size();
+    }
+
+    /**
+     * Flushes mapped pages to disk.
+     */
+    public synchronized void force() {
+        if (segment != null) segment.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        segment = null;
+    }
+
+    private MappedByteBuffer reserve(int length) throws IOException {
+        if (segment == null) {
+            throw new IllegalStateException("Journal must be replayed before appending");
+        }
+        if (RECORD_HEADER_SIZE + length > SEGMENT_SIZE - HEADER_SIZE) {
+            throw new IOException("Journal record too large: " + length + " bytes");
+        }
+        if (segment.remaining() < RECORD_HEADER_SIZE + length) {
+            segment.force();
+            openSegment(segmentIndex + 1);
+        }
+        return segment;
+    }
+
+    // The length goes in last, so a record is only visible to replay once it is complete
+    private void commit(MappedByteBuffer buf, int start, int length, long timestampMillis) {
+        byte[] payload = payload(length);
+        buf.get(start + RECORD_HEADER_SIZE, payload, 0, length);
+        crc.reset();
+        crc.update(payload, 0, length);
+        buf.putInt(start + 4, (int) crc.getValue());
+        buf.putInt(start, length);
+        buf.position(start + RECORD_HEADER_SIZE + length);
+        lastTimestamps.merge(segmentIndex, timestampMillis, Math::max);
+        if (forceEachRecord) buf.force();
+    }
+
+    private static int codeLength(MenuItem item) {
+        return Math.min(item.getSku().length(), 255);
+    }
+
+    private byte[] payload(int length) {
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        return scratch;
+    }
+
+    private void openSegment(int index) throws IOException {
+        MappedByteBuffer buf = map(segmentPath(index));
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.position(HEADER_SIZE);
+        segment = buf;
+        segmentIndex = index;
+        lastTimestamps.put(index, Long.MIN_VALUE);
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    // The checkpoint: magic, version, last order number and a CRC of the three; 0 if there is none
+    private int readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) return 0;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.capacity() != CHECKPOINT_SIZE || buf.getInt(0) != CHECKPOINT_MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("Not a journal checkpoint: " + file);
+        }
+        crc.reset();
+        crc.update(buf.array(), 0, CHECKPOINT_SIZE - 4);
+        if ((int) crc.getValue() != buf.getInt(CHECKPOINT_SIZE - 4)) {
+            throw new IOException("Journal checkpoint is corrupt: " + file);
+        }
+        return buf.getInt(8);
+    }
+
+    private void writeCheckpoint(int lastOrderNumber) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        buf.putInt(CHECKPOINT_MAGIC).putInt(VERSION).putInt(lastOrderNumber);
+        crc.reset();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+
+        // Written aside, synced and moved into place, so the old segments are only deleted once it is safe
+        Path target = directory.resolve(CHECKPOINT_FILE);
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : stream) segments.add(p);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,55 @@
+package com.foodregistry;
+
+/**
+ * Outcome of a checkout, for callers that want the figures rather than a rendered receipt.
+ * All amounts are in cents.
+ */
+public class OrderResult {
+    private final int orderNumber;
+    private final long subtotalCents;
+    private final long sstCents;
+    private final long totalCents;
+    private final long amountPaidCents;
+
+    public OrderResult(int orderNumber, long subtotalCents, long sstCents, long totalCents, long amountPaidCents) {
+        this.orderNumber = orderNumber;
+        this.subtotalCents = subtotalCents;
+        this.sstCents = sstCents;
+        this.totalCents = totalCents;
+        this.amountPaidCents = amountPaidCents;
+    }
+
+    /**
+     * @return false if the amount tendered didn't cover the total; nothing was billed.
+     */
+    public boolean isPaid() {
+        return orderNumber > 0;
+    }
+
+    /**
+     * @return The receipt number, or 0 if the order wasn't paid.
+     */
+    public int getOrderNumber() {
+        return orderNumber;
+    }
+
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+
+    public long getSSTCents() {
+        return sstCents;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public long getAmountPaidCents() {
+        return amountPaidCents;
+    }
+
+    public long getChangeCents() {
+        return isPaid() ? amountPaidCents - totalCents : 0;
+    }
+}
@@ -0,0 +1,251 @@
+package com.foodregistry;
+
+import com.sun.net.httpserver.HttpHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Hosts many outlets in one process. Each outlet is a Restaurant with its own
+ * data directory under the outlets root (menu, users, journal, audit log and
+ * receipts), its own sessions and counters and its own locks, so outlets only
+ * share the JVM and the request threads.
+ *
+ * An outlet opens on its first request and closes again once it has been idle
+ * for a while, or when more than the configured number are open; requests in
+ * flight hold it open. Looking up an open outlet takes no lock. One outlet may
+ * only have so many requests in flight, so a rush at one outlet can't take
+ * every request thread from the others.
+ * Configured with -Dfoodregistry.outlets.dir=DIR, -Dfoodregistry.outlets.max=N,
+ * -Dfoodregistry.outlets.idle=SECONDS and -Dfoodregistry.outlets.active=N.
+ */
+public class OutletRegistry implements AutoCloseable {
+    public static final String DIR_PROPERTY = "foodregistry.outlets.dir";
+    public static final String MAX_PROPERTY = "foodregistry.outlets.max";
+    public static final String IDLE_PROPERTY = "foodregistry.outlets.idle";
+    public static final String ACTIVE_PROPERTY = "foodregistry.outlets.active";
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /**
+     * One outlet: its restaurant and the handler serving it while it is open.
+     */
+    public static final class Outlet {
+        private final String id;
+        private final Path dir;
+        // Requests in flight; -1 once closed, so a closing outlet takes no new requests
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile long lastUsed = System.nanoTime();
+        private volatile Restaurant restaurant;
+        private volatile HttpHandler handler;
+
+        private Outlet(String id, Path dir) {
+            this.id = id;
+            this.dir = dir;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Restaurant getRestaurant() {
+            return restaurant;
+        }
+
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        /**
+         * @return Requests in flight, including the caller's.
+         */
+        public int getActive() {
+            return Math.max(0, active.get());
+        }
+
+        private boolean enter() {
+            while (true) {
+                int n = active.get();
+                if (n < 0) return false;
+                if (active.compareAndSet(n, n + 1)) return true;
+            }
+        }
+    }
+
+    private final Path root;
+    private final int maxOpen;
+    private final int maxActive;
+    private final long idleNanos;
+    private final BiFunction<String, Restaurant, HttpHandler> handlers;
+    private final ConcurrentHashMap<String, Outlet> outlets = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a registry configured from system properties.
+     * @param handlers Builds the handler for an outlet when it opens, from its id and restaurant.
+     */
+    public OutletRegistry(BiFunction<String, Restaurant, HttpHandler> handlers) {
+        this(Paths.get(System.getProperty(DIR_PROPERTY, "outlets")),
+             Integer.getInteger(MAX_PROPERTY, 64),
+             Integer.getInteger(IDLE_PROPERTY, 600),
+             Integer.getInteger(ACTIVE_PROPERTY, Math.max(2, ServerExecutors.configuredThreads() / 2)),
+             handlers);
+    }
+
+    /**
+     * @param root The directory holding one subdirectory per outlet, named by its id.
+     * @param maxOpen How many outlets may be open at once before idle ones are closed early.
+     * @param idleSeconds How long an outlet stays open without requests.
+     * @param maxActive How many requests one outlet may have in flight.
+     * @param handlers Builds the handler for an outlet when it opens, from its id and restaurant.
+     */
+    public OutletRegistry(Path root, int maxOpen, int idleSeconds, int maxActive,
+                          BiFunction<String, Restaurant, HttpHandler> handlers) {
+        this.root = root;
+        this.maxOpen = Math.max(1, maxOpen);
+        this.maxActive = Math.max(1, maxActive);
+        this.idleNanos = TimeUnit.SECONDS.toNanos(Math.max(1, idleSeconds));
+        this.handlers = handlers;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outlet-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(30, idleSeconds / 2));
+        sweeper.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds the open-outlet gauge and open/close counters.
+     */
+    public void registerMetrics(Metrics metrics) {
+        metrics.gauge("foodregistry_outlets_open", "", "Outlets open in this process.", open::get);
+        metrics.counter("foodregistry_outlet_opens_total", "", "Times an outlet was opened.", opened::get);
+        metrics.counter("foodregistry_outlet_closes_total", "", "Times an idle outlet was closed.", closed::get);
+    }
+
+    /**
+     * Opens the outlet if needed and holds it open until release.
+     * @return The outlet, or null if there is no outlet with that id.
+     */
+    public Outlet acquire(String id) {
+        if (id == null || !ID.matcher(id).matches()) return null;
+        while (true) {
+            Outlet outlet = outlets.get(id);
+            if (outlet == null) {
+                Path dir = root.resolve(id);
+                if (!Files.isDirectory(dir)) return null;
+                Outlet created = new Outlet(id, dir);
+                outlet = outlets.putIfAbsent(id, created);
+                if (outlet == null) outlet = created;
+            }
+            if (outlet.enter()) {
+                outlet.lastUsed = System.nanoTime();
+                try {
+                    if (outlet.restaurant == null) openOutlet(outlet);
+                } catch (RuntimeException e) {
+                    release(outlet);
+                    throw e;
+                }
+                return outlet;
+            }
+            // Closed under us; the next pass puts a fresh one in its place
+            outlets.remove(id, outlet);
+        }
+    }
+
+    /**
+     * @return Whether the outlet has more requests in flight than it may; the caller should back off.
+     */
+    public boolean isBusy(Outlet outlet) {
+        return outlet.getActive() > maxActive;
+    }
+
+    public void release(Outlet outlet) {
+        outlet.lastUsed = System.nanoTime();
+        outlet.active.decrementAndGet();
+    }
+
+    /**
+     * @return How many outlets are open.
+     */
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    /**
+     * Closes every outlet, waiting for none of their requests.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        for (Outlet outlet : outlets.values()) {
+            outlet.active.set(-1);
+            outlets.remove(outlet.id, outlet);
+            closeOutlet(outlet);
+        }
+    }
+
+    private void openOutlet(Outlet outlet) {
+        synchronized (outlet) {
+            if (outlet.restaurant != null) return;
+            Restaurant restaurant = new Restaurant(outlet.dir);
+            outlet.handler = handlers.apply(outlet.id, restaurant);
+            outlet.restaurant = restaurant;
+        }
+        opened.incrementAndGet();
+        if (open.incrementAndGet() > maxOpen) {
+            closeLeastRecentlyUsed(outlet);
+        }
+    }
+
+    // Over the limit: close the outlet that has gone longest without a request
+    private void closeLeastRecentlyUsed(Outlet keep) {
+        Outlet oldest = null;
+        for (Outlet outlet : outlets.values()) {
+            if (outlet == keep || outlet.restaurant == null || outlet.active.get() != 0) continue;
+            if (oldest == null || outlet.lastUsed - oldest.lastUsed < 0) oldest = outlet;
+        }
+        if (oldest != null) tryClose(oldest);
+    }
+
+    private void closeIdle() {
+        try {
+            long now = System.nanoTime();
+            for (Outlet outlet : outlets.values()) {
+                if (now - outlet.lastUsed > idleNanos) tryClose(outlet);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void tryClose(Outlet outlet) {
+        if (!outlet.active.compareAndSet(0, -1)) return;
+        outlets.remove(outlet.id, outlet);
+        closeOutlet(outlet);
+    }
+
+    private void closeOutlet(Outlet outlet) {
+        Restaurant restaurant;
+        synchronized (outlet) {
+            restaurant = outlet.restaurant;
+            outlet.restaurant = null;
+            outlet.handler = null;
+        }
+        if (restaurant == null) return;
+        restaurant.close();
+        open.decrementAndGet();
+        closed.incrementAndGet();
+    }
+}
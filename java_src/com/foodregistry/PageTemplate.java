@@ -0,0 +1,133 @@
+package com.foodregistry;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An HTML page parsed once into static segments (pre-encoded to UTF-8) and
+ * named {{SLOT}} placeholders. Serving a page writes the segments as they are
+ * and streams only the slot contents. The file is parsed again only when its
+ * modification time changes.
+ */
+public class PageTemplate {
+
+    /**
+     * Writes the content of one slot; slots it doesn't know are left empty.
+     */
+    public interface SlotWriter {
+        void write(String slot, ResponseWriter out) throws IOException;
+    }
+
+    private static final class Compiled {
+        final FileTime modified;
+        final byte[][] segments; // segments[i] precedes slots[i]; the last one closes the page
+        final String[] slots;
+
+        Compiled(FileTime modified, byte[][] segments, String[] slots) {
+            this.modified = modified;
+            this.segments = segments;
+            this.slots = slots;
+        }
+    }
+
+    private final Path file;
+    private volatile Compiled compiled;
+
+    public PageTemplate(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Sends the page as a chunked 200 response, since the slot contents'
+     * length isn't known up front. The template is loaded before the headers
+     * go out, so a missing file can still be answered with an error.
+     */
+    public void send(HttpExchange t, SlotWriter slots) throws IOException {
+        Compiled page = current();
+        t.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        t.sendResponseHeaders(200, 0);
+        try (OutputStream os = t.getResponseBody()) {
+            write(page, os, slots);
+        }
+    }
+
+    /**
+     * Renders the page to a stream.
+     */
+    public void render(OutputStream os, SlotWriter slots) throws IOException {
+        write(current(), os, slots);
+    }
+
+    /**
+     * @return The placeholder names in page order.
+     */
+    public String[] getSlots() throws IOException {
+        return current().slots.clone();
+    }
+
+    private static void write(Compiled page, OutputStream os, SlotWriter slots) throws IOException {
+        ResponseWriter out = new ResponseWriter(os);
+        for (int i = 0; i < page.slots.length; i++) {
+            out.write(page.segments[i]);
+            slots.write(page.slots[i], out);
+        }
+        out.write(page.segments[page.slots.length]);
+        out.flush();
+    }
+
+    private Compiled current() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Compiled page = compiled;
+        if (page == null || !page.modified.equals(modified)) {
+            synchronized (this) {
+                page = compiled;
+                if (page == null || !page.modified.equals(modified)) {
+                    page = compile(Files.readString(file, StandardCharsets.UTF_8), modified);
+                    compiled = page;
+                }
+            }
+        }
+        return page;
+    }
+
+    private static Compiled compile(String text, FileTime modified) {
+        List<byte[]> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int start = 0;
+        int from = 0;
+        while (true) {
+            int open = text.indexOf("{{", from);
+            if (open < 0) break;
+            int close = text.indexOf("}}", open + 2);
+            if (close < 0) break;
+            if (!isSlotName(text, open + 2, close)) {
+                // e.g. the page script's '{{' + 'MENU}}' check stays literal
+                from = open + 2;
+                continue;
+            }
+            segments.add(text.substring(start, open).getBytes(StandardCharsets.UTF_8));
+            slots.add(text.substring(open + 2, close));
+            start = close + 2;
+            from = start;
+        }
+        segments.add(text.substring(start).getBytes(StandardCharsets.UTF_8));
+        return new Compiled(modified, segments.toArray(new byte[0][]), slots.toArray(new String[0]));
+    }
+
+    private static boolean isSlotName(String text, int start, int end) {
+        if (start == end) return false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_') return false;
+        }
+        return true;
+    }
+}
@@ -1,59 +1,50 @@
 package com.foodregistry;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.List;
+/**
+ * A billed order as it appears on its receipt: the lines and totals of the
+ * order, priced against the menu version it was pinned to, plus the receipt
+ * number and the amount tendered. Rendered by a ReceiptRenderer.
+ */
+public final class Receipt {
+    private final Order order;
+    private final MenuSnapshot menu;
+    private final int orderNumber;
+    private final long amountPaid;
 
-public class Receipt {
-    
-    public void saveToFile(Order order, List<MenuItem> menu, float amountPaid, int orderNumber) {
-        try (PrintWriter outFile = new PrintWriter(new FileWriter("ReceiptNo" + orderNumber + ".txt"))) {
-            printHeaderToFile(outFile);
-            outFile.println("Order: #" + orderNumber);
-            outFile.println();
-            outFile.println("Items in bill:");
+    /**
+     * @param order A totalled order created from a menu snapshot.
+     * @param amountPaid The amount tendered, in cents.
+     */
+    public Receipt(Order order, int orderNumber, long amountPaid) {
+        if (order.getMenu() == null) {
+            throw new IllegalArgumentException("A receipt needs an order priced against a menu snapshot");
+        }
+        this.order = order;
+        this.menu = order.getMenu();
+        this.orderNumber = orderNumber;
+        this.amountPaid = amountPaid;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
 
-            for (int i = 0; i < menu.size(); i++) {
-                if (order.getQuantity(i) > 0) {
-                    outFile.printf("(%c) [RM %.2f] %s × %d = RM %.2f%n",
-                            menu.get(i).getCode(),
-                            menu.get(i).getPrice(),
-                            menu.get(i).getName(),
-                            order.getQuantity(i),
-                            menu.get(i).getPrice() * order.getQuantity(i));
-                }
-            }
+    public MenuSnapshot getMenu() {
+        return menu;
+    }
 
-            float change = amountPaid - order.getTotal();
-            printSeparatorToFile(outFile, 36);
-            outFile.printf(" Subtotal: RM %.2f%n", order.getSubtotal());
-            outFile.printf(" SST charge 10%%: RM %.2f%n", order.getSST());
-            outFile.printf(" Grand total: RM %.2f%n", order.getTotal());
-            printSeparatorToFile(outFile, 36);
-            outFile.printf("Amount received: RM %.2f%n", amountPaid);
-            if (change > 0) {
-                outFile.printf(" Change given: RM %.2f%n", change);
-            }
-            printSeparatorToFile(outFile, 36);
-            outFile.println("Thank you and have a nice day ahead!");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public int getOrderNumber() {
+        return orderNumber;
     }
 
-    private void printSeparatorToFile(PrintWriter outFile, int length) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < length; i++) sb.append("=");
-        outFile.println(sb.toString());
+    public long getAmountPaid() {
+        return amountPaid;
     }
 
-    private void printHeaderToFile(PrintWriter outFile) {
-        String header = "= * === * === * === * === * ==";
-        String title = "H & S Restaurant Meal Billing System";
-        outFile.println(header);
-        outFile.println(title);
-        outFile.println(header);
-        outFile.println();
+    /**
+     * @return The change given, in cents; zero or less means none.
+     */
+    public long getChange() {
+        return amountPaid - order.getTotalCents();
     }
 }
@@ -0,0 +1,475 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps receipts in one segment file per day instead of one file per order.
+ *
+ * Each receipt is appended to the day's segment and gets an entry in the
+ * day's index (order number, offset and length), so a reprint is one lookup
+ * and one read. When a day is over its index is rewritten sorted by order
+ * number and, if compression is on, the segment is packed into deflated
+ * blocks of about 64 KB. A receipt torn by a crash is cut off the next time
+ * the archive is opened.
+ *
+ * Days go by the local time zone. Closed days' files never change. If the same
+ * number was used twice (the journal was lost), the newest receipt wins.
+ * Configured with -Dfoodregistry.receipts.dir=DIR and -Dfoodregistry.receipts.compress=true.
+ */
+public class ReceiptArchive implements AutoCloseable {
+    public static final String DIR_PROPERTY = "foodregistry.receipts.dir";
+    public static final String COMPRESS_PROPERTY = "foodregistry.receipts.compress";
+    private static final String SEGMENT = ".seg";
+    private static final String PACKED = ".segz";
+    private static final String OPEN_INDEX = ".open";
+    private static final String INDEX = ".idx";
+    private static final int MAGIC = 0x46525849; // "FRXI"
+    private static final int FLAG_PACKED = 1;
+    // Closed index: magic, flags, count, lowest and highest number, then the sorted entries
+    private static final int HEADER_SIZE = 20;
+    // Entry: number, length, offset of the receipt (or of its block), position within the block
+    private static final int ENTRY_SIZE = 20;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    // A closed day: enough to tell whether a number could be in it without opening it
+    private static final class Day {
+        final long epochDay;
+        final boolean packed;
+        final int count;
+        final int lowest;
+        final int highest;
+
+        Day(long epochDay, boolean packed, int count, int lowest, int highest) {
+            this.epochDay = epochDay;
+            this.packed = packed;
+            this.count = count;
+            this.lowest = lowest;
+            this.highest = highest;
+        }
+    }
+
+    private final Path directory;
+    private final boolean compress;
+    private final ZoneId zone;
+    private final NavigableMap<Long, Day> closed = new TreeMap<>();
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+    // The open day, in append order; the entries mirror its index file
+    private long openDay = Long.MIN_VALUE;
+    private FileChannel segment;
+    private FileChannel index;
+    private long segmentSize;
+    private int count;
+    private int[] numbers = new int[256];
+    private int[] lengths = new int[256];
+    private long[] offsets = new long[256];
+    private boolean ascending = true;
+
+    public ReceiptArchive(Path directory) throws IOException {
+        this(directory, Boolean.getBoolean(COMPRESS_PROPERTY), ZoneId.systemDefault());
+    }
+
+    /**
+     * Opens the archive, repairing the open day after a crash and closing any
+     * day before today that was left open.
+     * @param directory Where the day files live; created if missing.
+     * @param compress Whether closed days are packed.
+     * @param zone The time zone days start and end in.
+     */
+    public ReceiptArchive(Path directory, boolean compress, ZoneId zone) throws IOException {
+        this.directory = directory;
+        this.compress = compress;
+        this.zone = zone;
+        Files.createDirectories(directory);
+        NavigableMap<Long, Path> unclosed = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                long epochDay = dayOf(name);
+                if (epochDay == Long.MIN_VALUE) continue;
+                if (name.endsWith(INDEX)) {
+                    closed.put(epochDay, readHeader(epochDay));
+                } else if (name.endsWith(OPEN_INDEX)) {
+                    unclosed.put(epochDay, file);
+                }
+            }
+        }
+        for (Day day : closed.values()) {
+            // A crash after the index moved into place leaves the open-day files behind
+            Files.deleteIfExists(file(day.epochDay, OPEN_INDEX));
+            if (day.packed) Files.deleteIfExists(file(day.epochDay, SEGMENT));
+        }
+        long today = LocalDate.now(zone).toEpochDay();
+        for (long epochDay : unclosed.keySet()) {
+            if (closed.containsKey(epochDay)) continue;
+            closeOpenDay();
+            openDay(epochDay);
+        }
+        if (openDay < today) closeOpenDay();
+    }
+
+    /**
+     * Adds a receipt to the day it was issued on. Receipts are expected in
+     * time order; one stamped before the open day goes into the open day.
+     * Written but not synced until force.
+     */
+    public synchronized void append(int orderNumber, byte[] bytes, long timestampMillis) throws IOException {
+        long epochDay = Instant.ofEpochMilli(timestampMillis).atZone(zone).toLocalDate().toEpochDay();
+        if (!closed.isEmpty()) epochDay = Math.max(epochDay, closed.lastKey() + 1);
+        if (epochDay > openDay) {
+            closeOpenDay();
+            openDay(epochDay);
+        }
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        long position = segmentSize;
+        while (data.hasRemaining()) {
+            position += segment.write(data, position);
+        }
+        entry.clear();
+        entry.putInt(orderNumber).putInt(bytes.length).putLong(segmentSize).putInt(0).flip();
+        long at = (long) count * ENTRY_SIZE;
+        while (entry.hasRemaining()) {
+            at += index.write(entry, at);
+        }
+        addEntry(orderNumber, bytes.length, segmentSize);
+        segmentSize = position;
+    }
+
+    /**
+     * Syncs the open day's segment and index to disk.
+     */
+    public synchronized void force() throws IOException {
+        if (segment == null) return;
+        segment.force(false);
+        index.force(false);
+    }
+
+    /**
+     * @return The receipt with that number as it was written, or null if there is none.
+     */
+    public synchronized byte[] read(int orderNumber) throws IOException {
+        if (segment != null) {
+            int at = findOpen(orderNumber);
+            if (at >= 0) {
+                byte[] bytes = new byte[lengths[at]];
+                readFully(segment, ByteBuffer.wrap(bytes), offsets[at]);
+                return bytes;
+            }
+        }
+        for (Day day : closed.descendingMap().values()) {
+            if (orderNumber < day.lowest || orderNumber > day.highest) continue;
+            byte[] bytes = readClosed(day, orderNumber);
+            if (bytes != null) return bytes;
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether the day has been closed, so its files no longer change.
+     */
+    public synchronized boolean isClosed(LocalDate date) {
+        return closed.containsKey(date.toEpochDay());
+    }
+
+    /**
+     * Syncs and closes the open day's files. The day stays open on disk and
+     * carries on when the archive is opened again.
+     */
+    @Override
+    public synchronized void close() {
+        if (segment == null) return;
+        try {
+            force();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        closeChannels();
+    }
+
+    private void addEntry(int orderNumber, int length, long offset) {
+        if (count == numbers.length) {
+            numbers = Arrays.copyOf(numbers, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        if (count > 0 && orderNumber < numbers[count - 1]) ascending = false;
+        numbers[count] = orderNumber;
+        lengths[count] = length;
+        offsets[count] = offset;
+        count++;
+    }
+
+    // The newest entry in the open day with that number
+    private int findOpen(int orderNumber) {
+        if (ascending) {
+            int at = lastIndexOf(numbers, count, orderNumber);
+            return at >= 0 && numbers[at] == orderNumber ? at : -1;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if (numbers[i] == orderNumber) return i;
+        }
+        return -1;
+    }
+
+    // The last position whose number is at most the one wanted, or -1
+    private static int lastIndexOf(int[] sorted, int length, int orderNumber) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= orderNumber) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    // Opens a day for appending, keeping whatever of its receipts made it to disk intact
+    private void openDay(long epochDay) throws IOException {
+        segment = FileChannel.open(file(epochDay, SEGMENT), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(file(epochDay, OPEN_INDEX), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        openDay = epochDay;
+        count = 0;
+        ascending = true;
+        segmentSize = 0;
+
+        long size = segment.size();
+        int entries = (int) (index.size() / ENTRY_SIZE);
+        ByteBuffer buf = ByteBuffer.allocate(entries * ENTRY_SIZE);
+        readFully(index, buf, 0);
+        buf.flip();
+        for (int i = 0; i < entries; i++) {
+            int number = buf.getInt();
+            int length = buf.getInt();
+            long offset = buf.getLong();
+            buf.getInt();
+            // Anything after the first entry that doesn't line up is a torn write
+            if (length < 0 || offset != segmentSize || offset + length > size) break;
+            addEntry(number, length, offset);
+            segmentSize += length;
+        }
+        index.truncate((long) count * ENTRY_SIZE);
+        segment.truncate(segmentSize);
+    }
+
+    // Sorts the open day's index by number, packs its segment if asked and seals the day
+    private void closeOpenDay() throws IOException {
+        if (segment == null) return;
+        long epochDay = openDay;
+        // Sorted by number, then by append order so the newest duplicate comes last
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) numbers[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        long[] positions = new long[count];
+        int[] inner = new int[count];
+        boolean packed = compress && count > 0;
+        if (packed) {
+            pack(epochDay, positions, inner);
+        } else {
+            for (int i = 0; i < count; i++) positions[i] = offsets[i];
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE);
+        int lowest = count == 0 ? 0 : (int) (order[0] >> 32);
+        int highest = count == 0 ? -1 : (int) (order[count - 1] >> 32);
+        buf.putInt(MAGIC).putInt(packed ? FLAG_PACKED : 0).putInt(count).putInt(lowest).putInt(highest);
+        for (long key : order) {
+            int i = (int) key;
+            buf.putInt(numbers[i]).putInt(lengths[i]).putLong(positions[i]).putInt(inner[i]);
+        }
+        segment.force(false);
+        closeChannels();
+
+        // The index moves into place last; until then the day is still open on disk
+        Path target = file(epochDay, INDEX);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        Files.write(temp, buf.array());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        closed.put(epochDay, new Day(epochDay, packed, count, lowest, highest));
+        Files.deleteIfExists(file(epochDay, OPEN_INDEX));
+        if (packed) Files.deleteIfExists(file(epochDay, SEGMENT));
+        openDay = Long.MIN_VALUE;
+        count = 0;
+    }
+
+    // Deflates runs of whole receipts into blocks: compressed length, raw length, data
+    private void pack(long epochDay, long[] positions, int[] inner) throws IOException {
+        Path target = file(epochDay, PACKED);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            int first = 0;
+            while (first < count) {
+                int last = first;
+                int raw = lengths[first];
+                while (last + 1 < count && raw + lengths[last + 1] <= BLOCK_SIZE) {
+                    raw += lengths[++last];
+                }
+                byte[] block = new byte[raw];
+                readFully(segment, ByteBuffer.wrap(block), offsets[first]);
+                for (int i = first, p = 0; i <= last; p += lengths[i], i++) {
+                    positions[i] = written;
+                    inner[i] = p;
+                }
+                deflater.reset();
+                deflater.setInput(block);
+                deflater.finish();
+                byte[] compressed = new byte[raw + raw / 1000 + 64];
+                int size = 0;
+                while (!deflater.finished()) {
+                    if (size == compressed.length) compressed = Arrays.copyOf(compressed, size * 2);
+                    size += deflater.deflate(compressed, size, compressed.length - size);
+                }
+                ByteBuffer buf = ByteBuffer.allocate(8 + size);
+                buf.putInt(size).putInt(raw).put(compressed, 0, size).flip();
+                while (buf.hasRemaining()) {
+                    written += out.write(buf);
+                }
+                first = last + 1;
+            }
+            out.force(false);
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private byte[] readClosed(Day day, int orderNumber) throws IOException {
+        try (FileChannel in = FileChannel.open(file(day.epochDay, INDEX), StandardOpenOption.READ)) {
+            // Binary search on the newest entry with the number, reading entries in place
+            int low = 0;
+            int high = day.count - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int number = readEntry(in, mid).getInt(0);
+                if (number <= orderNumber) {
+                    if (number == orderNumber) found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (found < 0) return null;
+            ByteBuffer hit = readEntry(in, found);
+            int length = hit.getInt(4);
+            long position = hit.getLong(8);
+            int offset = hit.getInt(16);
+            byte[] bytes = new byte[length];
+            if (!day.packed) {
+                try (FileChannel data = FileChannel.open(file(day.epochDay, SEGMENT), StandardOpenOption.READ)) {
+                    readFully(data, ByteBuffer.wrap(bytes), position);
+                }
+                return bytes;
+            }
+            try (FileChannel data = FileChannel.open(file(day.epochDay, PACKED), StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                readFully(data, header, position);
+                byte[] compressed = new byte[header.getInt(0)];
+                byte[] raw = new byte[header.getInt(4)];
+                readFully(data, ByteBuffer.wrap(compressed), position + 8);
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    // Only as far as the receipt wanted
+                    int end = offset + length;
+                    int size = 0;
+                    while (size < end && !inflater.finished()) {
+                        int n = inflater.inflate(raw, size, end - size);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        size += n;
+                    }
+                    if (size < end) throw new IOException("Truncated receipt block in " + LocalDate.ofEpochDay(day.epochDay));
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt receipt block in " + LocalDate.ofEpochDay(day.epochDay), e);
+                } finally {
+                    inflater.end();
+                }
+                System.arraycopy(raw, offset, bytes, 0, length);
+                return bytes;
+            }
+        }
+    }
+
+    private ByteBuffer readEntry(FileChannel in, int at) throws IOException {
+        entry.clear();
+        readFully(in, entry, HEADER_SIZE + (long) at * ENTRY_SIZE);
+        return entry;
+    }
+
+    private Day readHeader(long epochDay) throws IOException {
+        Path path = file(epochDay, INDEX);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            readFully(in, header, 0);
+            if (header.getInt(0) != MAGIC || in.size() < HEADER_SIZE + (long) header.getInt(8) * ENTRY_SIZE) {
+                throw new IOException("Not a receipt index: " + path);
+            }
+        }
+        return new Day(epochDay, (header.getInt(4) & FLAG_PACKED) != 0,
+                header.getInt(8), header.getInt(12), header.getInt(16));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) throw new IOException("Unexpected end of receipt file");
+            position += n;
+        }
+    }
+
+    private void closeChannels() {
+        try {
+            segment.close();
+            index.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        segment = null;
+        index = null;
+    }
+
+    private Path file(long epochDay, String suffix) {
+        return directory.resolve(LocalDate.ofEpochDay(epochDay) + suffix);
+    }
+
+    private static long dayOf(String name) {
+        int dot = name.indexOf('.');
+        if (dot != 10) return Long.MIN_VALUE;
+        try {
+            return LocalDate.parse(name.substring(0, dot)).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
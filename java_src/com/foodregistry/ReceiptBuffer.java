@@ -0,0 +1,98 @@
+package com.foodregistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that receipts are rendered into. Each thread keeps
+ * one and resets it per receipt, so rendering only allocates the finished
+ * copy that leaves the buffer.
+ */
+public final class ReceiptBuffer {
+    private byte[] bytes;
+    private int count;
+
+    public ReceiptBuffer() {
+        this(1024);
+    }
+
+    public ReceiptBuffer(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    public ReceiptBuffer reset() {
+        count = 0;
+        return this;
+    }
+
+    public int length() {
+        return count;
+    }
+
+    public ReceiptBuffer append(byte[] encoded) {
+        ensure(encoded.length);
+        System.arraycopy(encoded, 0, bytes, count, encoded.length);
+        count += encoded.length;
+        return this;
+    }
+
+    /**
+     * Appends a whole number in decimal.
+     */
+    public ReceiptBuffer append(long value) {
+        if (value < 0) {
+            return append(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        ensure(digits);
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+        return this;
+    }
+
+    /**
+     * Appends an amount with exactly two decimals, as Money.append does.
+     */
+    public ReceiptBuffer appendMoney(long cents) {
+        long units = cents / 100;
+        int fraction = (int) (cents % 100);
+        if (cents < 0) {
+            ensure(1);
+            bytes[count++] = '-';
+            units = -units;
+            fraction = -fraction;
+        }
+        append(units);
+        ensure(3);
+        bytes[count++] = '.';
+        bytes[count++] = (byte) ('0' + fraction / 10);
+        bytes[count++] = (byte) ('0' + fraction % 10);
+        return this;
+    }
+
+    /**
+     * @return A copy of the contents, for handing to another thread.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, count);
+    }
+
+    /**
+     * @return The contents decoded as UTF-8.
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, count, StandardCharsets.UTF_8);
+    }
+
+    private void ensure(int extra) {
+        if (count + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + extra));
+        }
+    }
+}
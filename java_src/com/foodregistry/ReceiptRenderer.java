@@ -0,0 +1,136 @@
+package com.foodregistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lays out a receipt; subclasses supply the markup. Everything that doesn't
+ * change between receipts is encoded once: the fixed text as byte arrays
+ * and, for each item of the current menu version, the "(code) [RM price]
+ * name x " prefix of its line. Rendering then only copies bytes and writes
+ * the numbers. Renderers are thread-safe.
+ */
+public abstract class ReceiptRenderer {
+    private final byte[] header;
+    private final byte[] afterNumber;
+    private final String times;
+    private final byte[] lineTotal;
+    private final byte[] lineEnd;
+    private final byte[] subtotal;
+    private final byte[] sst;
+    private final byte[] grandTotal;
+    private final byte[] received;
+    private final byte[] change;
+    private final byte[] footer;
+
+    // Line prefixes of the newest menu version seen, encoded as items are first billed
+    private static final class Prefixes {
+        final MenuSnapshot menu;
+        final AtomicReferenceArray<byte[]> lines;
+
+        Prefixes(MenuSnapshot menu) {
+            this.menu = menu;
+            this.lines = new AtomicReferenceArray<>(menu.size());
+        }
+    }
+
+    private volatile Prefixes prefixes;
+
+    /**
+     * @param header Everything before the receipt number.
+     * @param afterNumber Everything between the number and the first line.
+     * @param times Separates an item's name from its quantity.
+     * @param indent Starts each total line.
+     * @param lineEnd Ends each line.
+     * @param rule The separator between sections, including its line end.
+     * @param end Follows the closing message.
+     */
+    protected ReceiptRenderer(String header, String afterNumber, String times, String indent,
+                              String lineEnd, String rule, String end) {
+        this.header = bytes(header);
+        this.afterNumber = bytes(afterNumber);
+        this.times = times;
+        this.lineTotal = bytes(" = RM ");
+        this.lineEnd = bytes(lineEnd);
+        this.subtotal = bytes(rule + indent + "Subtotal: RM ");
+        this.sst = bytes(lineEnd + indent + "SST charge 10%: RM ");
+        this.grandTotal = bytes(lineEnd + indent + "Grand total: RM ");
+        this.received = bytes(lineEnd + rule + "Amount received: RM ");
+        this.change = bytes(lineEnd + indent + "Change given: RM ");
+        this.footer = bytes(lineEnd + rule + "Thank you and have a nice day ahead!" + end);
+    }
+
+    /**
+     * Appends the rendered receipt to the buffer.
+     */
+    public void render(Receipt receipt, ReceiptBuffer out) {
+        Order order = receipt.getOrder();
+        MenuSnapshot menu = receipt.getMenu();
+        Prefixes cached = prefixesFor(menu);
+
+        out.append(header).append(receipt.getOrderNumber()).append(afterNumber);
+        for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+            MenuItem item = menu.get(i);
+            int qty = order.getQuantity(i);
+            out.append(linePrefix(cached, menu, i)).append(qty).append(lineTotal);
+            out.appendMoney(item.getPriceCents() * qty).append(lineEnd);
+        }
+        out.append(subtotal).appendMoney(order.getSubtotalCents());
+        out.append(sst).appendMoney(order.getSSTCents());
+        out.append(grandTotal).appendMoney(order.getTotalCents());
+        out.append(received).appendMoney(receipt.getAmountPaid());
+        if (receipt.getChange() > 0) {
+            out.append(change).appendMoney(receipt.getChange());
+        }
+        out.append(footer);
+    }
+
+    /**
+     * Renders into a fresh buffer; for callers off the checkout path.
+     */
+    public String render(Receipt receipt) {
+        ReceiptBuffer out = new ReceiptBuffer();
+        render(receipt, out);
+        return out.toString();
+    }
+
+    // Orders still pinned to an older version render uncached rather than evict the current one
+    private Prefixes prefixesFor(MenuSnapshot menu) {
+        Prefixes current = prefixes;
+        if (current != null && current.menu == menu) return current;
+        if (current == null || menu.getVersion() > current.menu.getVersion()) {
+            Prefixes next = new Prefixes(menu);
+            prefixes = next;
+            return next;
+        }
+        return null;
+    }
+
+    private byte[] linePrefix(Prefixes cached, MenuSnapshot menu, int index) {
+        if (cached == null) return encodePrefix(menu.get(index));
+        byte[] line = cached.lines.get(index);
+        if (line == null) {
+            line = encodePrefix(menu.get(index));
+            cached.lines.set(index, line);
+        }
+        return line;
+    }
+
+    private byte[] encodePrefix(MenuItem item) {
+        StringBuilder sb = new StringBuilder(32 + item.getName().length());
+        sb.append('(').append(item.getSku()).append(") [RM ");
+        Money.append(sb, item.getPriceCents()).append("] ").append(name(item.getName())).append(times);
+        return bytes(sb.toString());
+    }
+
+    /**
+     * @return The item name as it appears on the receipt; the markup escapes it here.
+     */
+    protected String name(String name) {
+        return name;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
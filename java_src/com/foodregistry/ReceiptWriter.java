@@ -0,0 +1,250 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes rendered receipts to the receipt archive on a background thread so
+ * checkout doesn't wait on the disk. Receipts queued while a batch is being
+ * written go out together in the next batch.
+ * Configured with -Dfoodregistry.receipts.fsync=batch|receipt.
+ */
+public class ReceiptWriter implements AutoCloseable {
+
+    public enum Durability {
+        PER_BATCH,   // write every receipt in the batch, then fsync them together
+        PER_RECEIPT  // fsync each receipt before writing the next
+    }
+
+    public static final String DURABILITY_PROPERTY = "foodregistry.receipts.fsync";
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_BATCH = 256;
+
+    private final ReceiptArchive archive;
+    private final Durability durability;
+    private final BlockingQueue<Pending> queue;
+    private final Thread thread;
+    private final Object progress = new Object();
+    private long submitted;       // guarded by progress
+    private long completed;       // guarded by progress
+    private volatile boolean closed;
+    private final LatencyHistogram batchTimer = new LatencyHistogram();
+
+    private static final class Pending {
+        final int orderNumber;
+        final byte[] bytes;
+        final long timestampMillis;
+
+        Pending(int orderNumber, byte[] bytes, long timestampMillis) {
+            this.orderNumber = orderNumber;
+            this.bytes = bytes;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    public ReceiptWriter() {
+        this(Paths.get("."));
+    }
+
+    /**
+     * Writes to the receipt archive under the given data directory.
+     */
+    public ReceiptWriter(Path dataDir) {
+        this(openArchive(dataDir.resolve(System.getProperty(ReceiptArchive.DIR_PROPERTY, "receipts"))),
+             configuredDurability(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param archive Where receipts go; null to drop them, reporting each one.
+     */
+    public ReceiptWriter(ReceiptArchive archive, Durability durability, int capacity) {
+        this.archive = archive;
+        this.durability = durability;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "receipt-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static Durability configuredDurability() {
+        String value = System.getProperty(DURABILITY_PROPERTY, "batch").trim().toLowerCase(Locale.ROOT);
+        return "receipt".equals(value) ? Durability.PER_RECEIPT : Durability.PER_BATCH;
+    }
+
+    private static ReceiptArchive openArchive(Path directory) {
+        try {
+            return new ReceiptArchive(directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * @return How long each batch took to write and sync, in nanoseconds.
+     */
+    public LatencyHistogram getBatchTimer() {
+        return batchTimer;
+    }
+
+    /**
+     * @return Receipts submitted but not yet written.
+     */
+    public long getPending() {
+        synchronized (progress) {
+            return submitted - completed;
+        }
+    }
+
+    /**
+     * Queues a rendered receipt. Blocks only when the queue is full, which
+     * pushes back on checkouts if the disk falls behind.
+     * @param orderNumber The receipt number it is filed under.
+     * @param text The rendered receipt.
+     */
+    public void submit(int orderNumber, String text) {
+        submit(orderNumber, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queues a receipt that is already encoded. The writer keeps the array,
+     * so the caller must not reuse it.
+     */
+    public void submit(int orderNumber, byte[] bytes) {
+        submit(orderNumber, bytes, System.currentTimeMillis());
+    }
+
+    /**
+     * Queues an encoded receipt issued at the given time, which picks the day it is filed under.
+     */
+    public void submit(int orderNumber, byte[] bytes, long timestampMillis) {
+        if (closed) {
+            throw new IllegalStateException("Receipt writer is closed");
+        }
+        synchronized (progress) {
+            submitted++;
+        }
+        try {
+            queue.put(new Pending(orderNumber, bytes, timestampMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (progress) {
+                submitted--;
+                progress.notifyAll();
+            }
+            throw new IllegalStateException("Interrupted while queueing receipt #" + orderNumber, e);
+        }
+    }
+
+    /**
+     * Waits until every receipt submitted before this call has been written and synced.
+     */
+    public void flush() throws InterruptedException {
+        synchronized (progress) {
+            long target = submitted;
+            while (completed < target) {
+                progress.wait();
+            }
+        }
+    }
+
+    /**
+     * Looks up a receipt that was submitted earlier, waiting for it to be
+     * written if it is still queued.
+     * @return The receipt as written, or null if there is none.
+     */
+    public byte[] read(int orderNumber) throws IOException, InterruptedException {
+        if (archive == null) return null;
+        byte[] bytes = archive.read(orderNumber);
+        if (bytes == null && getPending() > 0) {
+            flush();
+            bytes = archive.read(orderNumber);
+        }
+        return bytes;
+    }
+
+    /**
+     * Drains the queue, stops the writer thread and closes the archive.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (archive != null) archive.close();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) return;
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                if (closed && queue.isEmpty()) return;
+                continue;
+            }
+            long start = System.nanoTime();
+            writeBatch(batch);
+            batchTimer.record(System.nanoTime() - start);
+            synchronized (progress) {
+                completed += batch.size();
+                progress.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        if (archive == null) {
+            for (Pending receipt : batch) {
+                System.err.println("Failed to write receipt #" + receipt.orderNumber + ": no receipt archive");
+            }
+            return;
+        }
+        for (Pending receipt : batch) {
+            try {
+                archive.append(receipt.orderNumber, receipt.bytes, receipt.timestampMillis);
+                if (durability == Durability.PER_RECEIPT) {
+                    archive.force();
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to write receipt #" + receipt.orderNumber + ": " + e.getMessage());
+            }
+        }
+        if (durability == Durability.PER_BATCH) {
+            try {
+                archive.force();
+            } catch (IOException e) {
+                System.err.println("Failed to sync receipts: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.foodregistry;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request body is larger than the server accepts.
+ */
+public class RequestTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public RequestTooLargeException(String message) {
+        super(message);
+    }
+}
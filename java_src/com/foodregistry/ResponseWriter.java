@@ -0,0 +1,117 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes text as UTF-8 straight into a response stream through a small
+ * buffer, so page fragments never become an intermediate String or byte[].
+ */
+public class ResponseWriter implements Appendable {
+    private static final int BUFFER_SIZE = 4096;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    public ResponseWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes bytes that are already encoded, such as a template's static segments.
+     */
+    public ResponseWriter write(byte[] bytes) throws IOException {
+        if (bytes.length > BUFFER_SIZE - count) {
+            flushBuffer();
+            if (bytes.length > BUFFER_SIZE) {
+                out.write(bytes);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    @Override
+    public ResponseWriter append(CharSequence text) throws IOException {
+        if (text == null) text = "null";
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public ResponseWriter append(CharSequence text, int start, int end) throws IOException {
+        if (text == null) text = "null";
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (count == BUFFER_SIZE) flushBuffer();
+                buffer[count++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                encode(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                encode(Character.isSurrogate(c) ? '?' : c);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ResponseWriter append(char c) throws IOException {
+        if (c < 0x80) {
+            if (count == BUFFER_SIZE) flushBuffer();
+            buffer[count++] = (byte) c;
+        } else {
+            encode(Character.isSurrogate(c) ? '?' : c);
+        }
+        return this;
+    }
+
+    public ResponseWriter append(long value) throws IOException {
+        if (BUFFER_SIZE - count < 20) flushBuffer();
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) return append(Long.toString(value));
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+        return this;
+    }
+
+    /**
+     * Passes buffered bytes on to the underlying stream and flushes it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void encode(int codePoint) throws IOException {
+        if (BUFFER_SIZE - count < 4) flushBuffer();
+        if (codePoint < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            buffer[count++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        } else {
+            buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.foodregistry;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+
+/**
+ * Per-day sales totals, one compact file per closed day, so reports over a
+ * date range read a few hundred small files instead of the journal or the
+ * receipts.
+ *
+ * File layout (yyyy-MM-dd.roll, big-endian): magic, version and epoch day;
+ * the day's orders, refunds, net subtotal, net SST and amount refunded; the
+ * item count; then one column at a time: codes, names, quantities, revenue.
+ * A CRC32 of everything before it ends the file. Quantities and revenue are
+ * net of refunds, which count on the day they were given, so a closed day
+ * never changes.
+ *
+ * Days not yet closed (normally just today) are held in memory and rolled up
+ * once a later day's first order or refund arrives, or the restaurant opens
+ * on a later day; until then the journal can replay them. Closed days are
+ * read once and kept, so a year to date sums at most 366 small arrays.
+ */
+public class SalesRollups {
+    public static final String DIR_PROPERTY = "foodregistry.rollups.dir";
+    // Longest range a query sums; keeps one request from reading years of files
+    public static final int MAX_DAYS = 3660;
+
+    private static final int MAGIC = 0x46525231; // "FRR1"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".roll";
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4 + 8 + 8 + 8 + 4;
+
+    /**
+     * One item's sales, or one period's, over a query range.
+     */
+    public static final class Line {
+        private final String key;
+        private String name;
+        private long orders;
+        private long quantity;
+        private long revenueCents;
+
+        Line(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+
+        /**
+         * @return The item code, or the period's first day as yyyy-MM-dd (yyyy-MM for months).
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The item name as last sold, or null for a period.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Orders billed in the period; 0 for an item.
+         */
+        public long getOrders() {
+            return orders;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * @return Net sales before SST: the item's revenue, or the period's subtotal
+         *         (just the filtered item's revenue when there is an item filter).
+         */
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+    }
+
+    /**
+     * Totals for a date range, per item and per day (per month past 31 days).
+     */
+    public static final class Summary {
+        private final LocalDate from;
+        private final LocalDate to;
+        private long orders;
+        private long refunds;
+        private long subtotalCents;
+        private long sstCents;
+        private long refundedCents;
+        private final List<Line> items = new ArrayList<>();
+        private final List<Line> periods = new ArrayList<>();
+
+        Summary(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public LocalDate getFrom() {
+            return from;
+        }
+
+        public LocalDate getTo() {
+            return to;
+        }
+
+        public long getOrders() {
+            return orders;
+        }
+
+        public long getRefunds() {
+            return refunds;
+        }
+
+        /**
+         * @return Net sales before SST, after refunds.
+         */
+        public long getSubtotalCents() {
+            return subtotalCents;
+        }
+
+        public long getSSTCents() {
+            return sstCents;
+        }
+
+        /**
+         * @return The total given back in refunds, SST included.
+         */
+        public long getRefundedCents() {
+            return refundedCents;
+        }
+
+        /**
+         * @return Items sold, by code.
+         */
+        public List<Line> getItems() {
+            return items;
+        }
+
+        /**
+         * @return One line per day, or per month for ranges over 31 days, oldest first.
+         */
+        public List<Line> getPeriods() {
+            return periods;
+        }
+    }
+
+    // A closed day as stored; never modified once built
+    private static final class Day {
+        final long epochDay;
+        final int orders;
+        final int refunds;
+        final long subtotal;
+        final long sst;
+        final long refunded;
+        final String[] codes;
+        final String[] names;
+        final long[] quantities;
+        final long[] revenue;
+
+        Day(long epochDay, int orders, int refunds, long subtotal, long sst, long refunded,
+            String[] codes, String[] names, long[] quantities, long[] revenue) {
+            this.epochDay = epochDay;
+            this.orders = orders;
+            this.refunds = refunds;
+            this.subtotal = subtotal;
+            this.sst = sst;
+            this.refunded = refunded;
+            this.codes = codes;
+            this.names = names;
+            this.quantities = quantities;
+            this.revenue = revenue;
+        }
+    }
+
+    // A day still taking orders
+    private static final class OpenDay {
+        final long epochDay;
+        int orders;
+        int refunds;
+        long subtotal;
+        long sst;
+        long refunded;
+        final Map<String, Integer> positions = new HashMap<>();
+        String[] codes = new String[16];
+        String[] names = new String[16];
+        long[] quantities = new long[16];
+        long[] revenue = new long[16];
+        int count;
+
+        OpenDay(long epochDay) {
+            this.epochDay = epochDay;
+        }
+
+        void add(Order order, int sign) {
+            MenuSnapshot menu = order.getMenu();
+            for (int i = order.nextLine(0); i >= 0; i = order.nextLine(i + 1)) {
+                MenuItem item = menu.get(i);
+                Integer position = positions.get(item.getSku());
+                int p;
+                if (position == null) {
+                    p = count++;
+                    if (p == codes.length) grow();
+                    codes[p] = item.getSku();
+                    positions.put(item.getSku(), p);
+                } else {
+                    p = position;
+                }
+                names[p] = item.getName();
+                long qty = (long) sign * order.getQuantity(i);
+                quantities[p] += qty;
+                revenue[p] += qty * item.getPriceCents();
+            }
+            subtotal += sign * order.getSubtotalCents();
+            sst += sign * order.getSSTCents();
+        }
+
+        private void grow() {
+            int size = codes.length * 2;
+            codes = Arrays.copyOf(codes, size);
+            names = Arrays.copyOf(names, size);
+            quantities = Arrays.copyOf(quantities, size);
+            revenue = Arrays.copyOf(revenue, size);
+        }
+
+        Day snapshot() {
+            return new Day(epochDay, orders, refunds, subtotal, sst, refunded,
+                Arrays.copyOf(codes, count), Arrays.copyOf(names, count),
+                Arrays.copyOf(quantities, count), Arrays.copyOf(revenue, count));
+        }
+    }
+
+    // The last string column read; consecutive days usually sell the same items, so their
+    // columns match byte for byte and share one decoded array
+    private static final class Column {
+        final byte[] bytes;
+        final String[] strings;
+
+        Column(byte[] bytes, String[] strings) {
+            this.bytes = bytes;
+            this.strings = strings;
+        }
+    }
+
+    private static final class ColumnCache {
+        private volatile Column last = new Column(new byte[0], new String[0]);
+
+        String[] decode(ByteBuffer buf, int count) {
+            byte[] bytes = buf.array();
+            int start = buf.position();
+            int pos = start;
+            for (int i = 0; i < count; i++) pos += 2 + (((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff));
+            buf.position(pos);
+            Column column = last;
+            if (column.strings.length == count && Arrays.equals(bytes, start, pos, column.bytes, 0, column.bytes.length)) {
+                return column.strings;
+            }
+            String[] strings = new String[count];
+            for (int i = 0, p = start; i < count; i++) {
+                int length = ((bytes[p] & 0xff) << 8) | (bytes[p + 1] & 0xff);
+                strings[i] = new String(bytes, p + 2, length, StandardCharsets.UTF_8);
+                p += 2 + length;
+            }
+            last = new Column(Arrays.copyOfRange(bytes, start, pos), strings);
+            return strings;
+        }
+    }
+
+    private final Path directory;
+    private final ZoneId zone;
+    private final ColumnCache lastCodes = new ColumnCache();
+    private final ColumnCache lastNames = new ColumnCache();
+    private final NavigableMap<Long, OpenDay> open = new TreeMap<>(); // guarded by this
+    private final ConcurrentSkipListSet<Long> onDisk = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Long, Day> closed = new ConcurrentHashMap<>();
+
+    public SalesRollups(Path directory) throws IOException {
+        this(directory, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param directory Where the day files live; created if missing.
+     * @param zone The time zone days start and end in.
+     */
+    public SalesRollups(Path directory, ZoneId zone) throws IOException {
+        this.directory = directory;
+        this.zone = zone;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    onDisk.add(LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())).toEpochDay());
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        }
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Adds a paid order to the day it was paid on. Orders for a day already
+     * rolled up are ignored, which is what lets the journal replay everything.
+     */
+    public synchronized void recordPayment(long timestampMillis, Order order) {
+        OpenDay day = openDay(timestampMillis);
+        if (day == null) return;
+        day.orders++;
+        day.add(order, 1);
+    }
+
+    /**
+     * Takes a refunded order off the day the refund was given on.
+     */
+    public synchronized void recordRefund(long timestampMillis, Order order) {
+        OpenDay day = openDay(timestampMillis);
+        if (day == null) return;
+        day.refunds++;
+        day.refunded += order.getTotalCents();
+        day.add(order, -1);
+    }
+
+    /**
+     * Writes out every day before the given one that is still held in memory.
+     */
+    public synchronized void rollUpBefore(LocalDate date) {
+        long before = date.toEpochDay();
+        while (!open.isEmpty() && open.firstKey() < before) {
+            OpenDay day = open.firstEntry().getValue();
+            Day done = day.snapshot();
+            try {
+                write(done);
+            } catch (IOException e) {
+                // Stays in memory and is retried at the next roll-up
+                e.printStackTrace();
+                return;
+            }
+            closed.put(done.epochDay, done);
+            onDisk.add(done.epochDay);
+            open.remove(done.epochDay);
+        }
+    }
+
+    /**
+     * @return Whether a day has been rolled up to disk.
+     */
+    public boolean isRolledUp(LocalDate date) {
+        return onDisk.contains(date.toEpochDay());
+    }
+
+    /**
+     * @return Whether every day before the given one that had sales is rolled up, none left in memory.
+     */
+    public synchronized boolean isRolledUpBefore(LocalDate date) {
+        return open.isEmpty() || open.firstKey() >= date.toEpochDay();
+    }
+
+    /**
+     * Sums the days from one date to another, both inclusive.
+     * @param sku Only this item's sales in the item and period lines, or null for all.
+     * @throws IllegalArgumentException if the range is backwards or longer than MAX_DAYS.
+     */
+    public Summary query(LocalDate from, LocalDate to, String sku) throws IOException {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        if (last < first) throw new IllegalArgumentException("The range ends before it starts");
+        if (last - first >= MAX_DAYS) throw new IllegalArgumentException("The range is longer than " + MAX_DAYS + " days");
+
+        // Open days are copied under the lock, along with which days are closed, so a
+        // day rolled up meanwhile is counted once; closed days never change
+        List<Day> days = new ArrayList<>();
+        List<Long> closedDays;
+        synchronized (this) {
+            for (OpenDay day : open.subMap(first, true, last, true).values()) {
+                days.add(day.snapshot());
+            }
+            closedDays = new ArrayList<>(onDisk.subSet(first, true, last, true));
+        }
+        for (long epochDay : closedDays) {
+            days.add(closedDay(epochDay));
+        }
+        days.sort((a, b) -> Long.compare(a.epochDay, b.epochDay));
+
+        // Codes match ignoring case, as on the menu
+        String wanted = sku == null ? null : MenuIndex.fold(sku);
+        Summary summary = new Summary(from, to);
+        boolean monthly = last - first >= 31;
+        Map<String, Line> items = new HashMap<>();
+        Line period = null;
+        String periodKey = null;
+        String[] lastCodes = null;
+        Line[] lines = null;
+        for (Day day : days) {
+            summary.orders += day.orders;
+            summary.refunds += day.refunds;
+            summary.subtotalCents += day.subtotal;
+            summary.sstCents += day.sst;
+            summary.refundedCents += day.refunded;
+
+            LocalDate date = LocalDate.ofEpochDay(day.epochDay);
+            String key = monthly ? date.toString().substring(0, 7) : date.toString();
+            if (!key.equals(periodKey)) {
+                periodKey = key;
+                period = new Line(key, null);
+                summary.periods.add(period);
+            }
+            period.orders += day.orders;
+            if (sku == null) period.revenueCents += day.subtotal;
+
+            // Days read with the same code column share its array, and so the lookups
+            if (day.codes != lastCodes) {
+                lastCodes = day.codes;
+                lines = new Line[day.codes.length];
+                for (int i = 0; i < day.codes.length; i++) {
+                    String folded = MenuIndex.fold(day.codes[i]);
+                    if (wanted != null && !wanted.equals(folded)) continue;
+                    Line item = items.get(folded);
+                    if (item == null) {
+                        items.put(folded, item = new Line(day.codes[i], day.names[i]));
+                    }
+                    lines[i] = item;
+                }
+            }
+            for (int i = 0; i < lines.length; i++) {
+                Line item = lines[i];
+                if (item == null) continue;
+                item.name = day.names[i];
+                item.quantity += day.quantities[i];
+                item.revenueCents += day.revenue[i];
+                if (wanted != null) {
+                    period.quantity += day.quantities[i];
+                    period.revenueCents += day.revenue[i];
+                }
+            }
+        }
+        summary.items.addAll(items.values());
+        Collections.sort(summary.items, (a, b) -> a.key.compareTo(b.key));
+        return summary;
+    }
+
+    private OpenDay openDay(long timestampMillis) {
+        long epochDay = Instant.ofEpochMilli(timestampMillis).atZone(zone).toLocalDate().toEpochDay();
+        if (onDisk.contains(epochDay)) return null;
+        OpenDay day = open.get(epochDay);
+        if (day == null) {
+            day = new OpenDay(epochDay);
+            open.put(epochDay, day);
+            rollUpBefore(LocalDate.ofEpochDay(epochDay));
+        }
+        return day;
+    }
+
+    private Day closedDay(long epochDay) throws IOException {
+        Day day = closed.get(epochDay);
+        if (day == null) {
+            day = read(epochDay);
+            Day raced = closed.putIfAbsent(epochDay, day);
+            if (raced != null) day = raced;
+        }
+        return day;
+    }
+
+    private Path file(long epochDay) {
+        return directory.resolve(LocalDate.ofEpochDay(epochDay) + SUFFIX);
+    }
+
+    private void write(Day day) throws IOException {
+        byte[][] codes = utf8(day.codes);
+        byte[][] names = utf8(day.names);
+        int size = HEADER_SIZE + day.codes.length * 16 + 4;
+        for (int i = 0; i < codes.length; i++) size += 4 + codes[i].length + names[i].length;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putShort((short) VERSION).putLong(day.epochDay);
+        buf.putInt(day.orders).putInt(day.refunds);
+        buf.putLong(day.subtotal).putLong(day.sst).putLong(day.refunded);
+        buf.putInt(day.codes.length);
+        for (byte[] code : codes) buf.putShort((short) code.length).put(code);
+        for (byte[] name : names) buf.putShort((short) name.length).put(name);
+        for (long quantity : day.quantities) buf.putLong(quantity);
+        for (long revenue : day.revenue) buf.putLong(revenue);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+
+        // Written aside and moved into place, so a crash never leaves half a day
+        Path target = file(day.epochDay);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        Files.write(temp, buf.array());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Day read(long epochDay) throws IOException {
+        Path path = file(epochDay);
+        byte[] bytes = Files.readAllBytes(path);
+        try {
+            if (bytes.length < HEADER_SIZE + 4) throw new IOException("Truncated rollup: " + path);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            if (buf.getInt(bytes.length - 4) != (int) crc.getValue()) {
+                throw new IOException("Rollup checksum mismatch: " + path);
+            }
+            if (buf.getInt() != MAGIC || buf.getShort() != VERSION || buf.getLong() != epochDay) {
+                throw new IOException("Not a rollup for " + LocalDate.ofEpochDay(epochDay) + ": " + path);
+            }
+            int orders = buf.getInt();
+            int refunds = buf.getInt();
+            long subtotal = buf.getLong();
+            long sst = buf.getLong();
+            long refunded = buf.getLong();
+            int count = buf.getInt();
+            String[] codes = lastCodes.decode(buf, count);
+            String[] names = lastNames.decode(buf, count);
+            long[] quantities = new long[count];
+            long[] revenue = new long[count];
+            buf.asLongBuffer().get(quantities);
+            buf.position(buf.position() + count * 8);
+            buf.asLongBuffer().get(revenue);
+            return new Day(epochDay, orders, refunds, subtotal, sst, refunded, codes, names, quantities, revenue);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated rollup: " + path);
+        }
+    }
+
+    private static byte[][] utf8(String[] strings) {
+        byte[][] bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+}
@@ -0,0 +1,106 @@
+package com.foodregistry;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the executor the HTTP server dispatches requests on.
+ * Configured with -Dfoodregistry.executor=single|virtual|pool and -Dfoodregistry.threads=N.
+ */
+public final class ServerExecutors {
+
+    public enum Mode {
+        SINGLE,   // the HttpServer's own dispatcher thread, as before
+        // One virtual thread per request on JDK 21+, otherwise POOL. The build targets 17
+        // and this mode has only been run as the fallback; it is unmeasured on JDK 21.
+        VIRTUAL,
+        POOL      // fixed pool of platform threads with a bounded queue
+    }
+
+    public static final String MODE_PROPERTY = "foodregistry.executor";
+    public static final String THREADS_PROPERTY = "foodregistry.threads";
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private ServerExecutors() {}
+
+    public static Mode configuredMode() {
+        String value = System.getProperty(MODE_PROPERTY, "pool");
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown executor mode '" + value + "', using POOL");
+            return Mode.POOL;
+        }
+    }
+
+    public static int configuredThreads() {
+        int fallback = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        return Integer.getInteger(THREADS_PROPERTY, fallback);
+    }
+
+    /**
+     * Creates the executor for a mode.
+     * @param mode The dispatch mode.
+     * @param threads Pool size, used by POOL (and VIRTUAL when it has to fall back).
+     * @return The executor, or null for SINGLE so HttpServer keeps its default dispatcher.
+     */
+    public static Executor create(Mode mode, int threads) {
+        switch (mode) {
+            case SINGLE:
+                return null;
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadExecutor();
+                if (virtual != null) return virtual;
+                System.err.println("Virtual threads need JDK 21+, using a pool of " + threads + " threads");
+                return newBoundedPool(threads);
+            case POOL:
+            default:
+                return newBoundedPool(threads);
+        }
+    }
+
+    /**
+     * Fixed-size pool. When the queue is full the dispatcher runs the request itself,
+     * which slows accepting new connections instead of dropping them.
+     */
+    public static ExecutorService newBoundedPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "http-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), factory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * @return Whether this JDK has virtual threads, i.e. VIRTUAL isn't running as POOL.
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Looked up reflectively so the code still builds and runs on JDK 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.foodregistry;
+
+import com.foodregistry.security.User;
+
+/**
+ * State belonging to one till: the signed-in user and the order being rung up.
+ */
+public class Session {
+    private final String id;
+    private final Order order;
+    private volatile User user;
+    private volatile String loginMessage = "";
+    private volatile long lastAccessMillis;
+
+    public Session(String id, Order order) {
+        this.id = id;
+        this.order = order;
+        this.lastAccessMillis = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public String getLoginMessage() {
+        return loginMessage;
+    }
+
+    public void setLoginMessage(String loginMessage) {
+        this.loginMessage = loginMessage;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch(long now) {
+        this.lastAccessMillis = now;
+    }
+}
@@ -0,0 +1,100 @@
+package com.foodregistry;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one {@link Session} per till, keyed by the id handed out in the session cookie.
+ * Sessions that sit idle longer than the timeout are dropped.
+ */
+public class SessionStore {
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    private static final int PURGE_INTERVAL = 64;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final Supplier<Order> orderFactory;
+    private final long idleTimeoutMillis;
+    private final AtomicInteger createdSincePurge = new AtomicInteger();
+
+    public SessionStore(Supplier<Order> orderFactory) {
+        this(orderFactory, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public SessionStore(Supplier<Order> orderFactory, long idleTimeoutMillis) {
+        this.orderFactory = orderFactory;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Looks up a live session and refreshes its idle timer.
+     * @param id The session id from the client's cookie, may be null.
+     * @return The session, or null if unknown or expired.
+     */
+    public Session get(String id) {
+        if (id == null) return null;
+        Session session = sessions.get(id);
+        if (session == null) return null;
+        long now = System.currentTimeMillis();
+        if (isExpired(session, now)) {
+            sessions.remove(id, session);
+            return null;
+        }
+        session.touch(now);
+        return session;
+    }
+
+    /**
+     * Creates a new session with an empty order.
+     * @return The new session.
+     */
+    public Session create() {
+        if (createdSincePurge.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purgeExpired();
+        }
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(id, orderFactory.get());
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Returns the session for the given id, creating a fresh one if it is unknown or expired.
+     * @param id The session id from the client's cookie, may be null.
+     * @return A live session.
+     */
+    public Session getOrCreate(String id) {
+        Session session = get(id);
+        return session != null ? session : create();
+    }
+
+    public void invalidate(String id) {
+        if (id != null) sessions.remove(id);
+    }
+
+    /**
+     * Drops every session that has been idle longer than the timeout.
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (isExpired(it.next(), now)) it.remove();
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.getLastAccessMillis() > idleTimeoutMillis;
+    }
+}
@@ -0,0 +1,199 @@
+package com.foodregistry;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory cache of static files (style.css and friends). Each file is read
+ * once, given a strong ETag and, where it helps, a precomputed gzip body; it is
+ * read again only when its modification time or size changes.
+ * Browsers may reuse a copy for -Dfoodregistry.assets.maxage seconds (default 60)
+ * and revalidate with If-None-Match after that.
+ */
+public class StaticAssets {
+    public static final String MAX_AGE_PROPERTY = "foodregistry.assets.maxage";
+
+    /**
+     * One cached version of a file.
+     */
+    public static final class Asset {
+        final FileTime modified;
+        final long size;
+        final String contentType;
+        final byte[] body;
+        final byte[] gzipBody; // null when compression doesn't pay off
+        final String etag;
+        final String gzipEtag;
+
+        Asset(FileTime modified, String contentType, byte[] body) throws IOException {
+            this.modified = modified;
+            this.size = body.length;
+            this.contentType = contentType;
+            this.body = body;
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Long.toHexString(body.length) + "\"";
+            byte[] gzip = gzip(body);
+            this.gzipBody = gzip.length < body.length ? gzip : null;
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gz\"";
+        }
+
+        public String getEtag(boolean gzip) {
+            return gzip && gzipBody != null ? gzipEtag : etag;
+        }
+
+        public byte[] getBody(boolean gzip) {
+            return gzip && gzipBody != null ? gzipBody : body;
+        }
+
+        public boolean hasGzip() {
+            return gzipBody != null;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    private final Path root;
+    private final String cacheControl;
+    private final ConcurrentHashMap<String, Asset> cache = new ConcurrentHashMap<>();
+
+    public StaticAssets(Path root) {
+        this(root, Integer.getInteger(MAX_AGE_PROPERTY, 60));
+    }
+
+    public StaticAssets(Path root, int maxAgeSeconds) {
+        this.root = root;
+        this.cacheControl = "public, max-age=" + Math.max(0, maxAgeSeconds);
+    }
+
+    /**
+     * Returns the cached file, reloading it if it changed on disk.
+     * @param name The file name relative to the asset root.
+     */
+    public Asset get(String name) throws IOException {
+        Path file = root.resolve(name);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Asset asset = cache.get(name);
+        if (asset == null || !asset.modified.equals(attrs.lastModifiedTime()) || asset.size != attrs.size()) {
+            asset = new Asset(attrs.lastModifiedTime(), contentType(name), Files.readAllBytes(file));
+            cache.put(name, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * @return A handler serving one file with ETag, 304 and gzip support.
+     */
+    public HttpHandler handler(String name) {
+        return t -> serve(t, name);
+    }
+
+    private void serve(HttpExchange t, String name) throws IOException {
+        try {
+            String method = t.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                t.getResponseHeaders().set("Allow", "GET, HEAD");
+                t.sendResponseHeaders(405, -1);
+                return;
+            }
+            Asset asset = get(name);
+            Headers request = t.getRequestHeaders();
+            boolean gzip = asset.hasGzip() && acceptsGzip(request.getFirst("Accept-Encoding"));
+            String etag = asset.getEtag(gzip);
+
+            Headers response = t.getResponseHeaders();
+            response.set("ETag", etag);
+            response.set("Cache-Control", cacheControl);
+            response.set("Vary", "Accept-Encoding");
+            if (matches(request.getFirst("If-None-Match"), etag)) {
+                t.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = asset.getBody(gzip);
+            response.set("Content-Type", asset.getContentType());
+            if (gzip) response.set("Content-Encoding", "gzip");
+            if ("HEAD".equals(method)) {
+                response.set("Content-Length", Integer.toString(body.length));
+                t.sendResponseHeaders(200, -1);
+                return;
+            }
+            t.sendResponseHeaders(200, body.length);
+            try (OutputStream os = t.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (NoSuchFileException e) {
+            t.sendResponseHeaders(404, -1);
+        } finally {
+            t.close();
+        }
+    }
+
+    /**
+     * Checks an If-None-Match header against an ETag (weak comparison, as RFC 9110 asks).
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) continue;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static String contentType(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".css")) return "text/css; charset=utf-8";
+        if (lower.endsWith(".js")) return "text/javascript; charset=utf-8";
+        if (lower.endsWith(".html")) return "text/html; charset=utf-8";
+        if (lower.endsWith(".svg")) return "image/svg+xml";
+        if (lower.endsWith(".png")) return "image/png";
+        if (lower.endsWith(".ico")) return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 2 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,16 @@
+package com.foodregistry;
+
+/**
+ * The plain-text receipt kept in the receipt archive.
+ */
+public final class TextReceiptRenderer extends ReceiptRenderer {
+    private static final String LINE = System.lineSeparator();
+    private static final String BANNER = "= * === * === * === * === * ==";
+    private static final String SEPARATOR = "====================================";
+
+    public TextReceiptRenderer() {
+        super(BANNER + LINE + "H & S Restaurant Meal Billing System" + LINE + BANNER + LINE + LINE + "Order: #",
+              LINE + LINE + "Items in bill:" + LINE,
+              " × ", " ", LINE, SEPARATOR + LINE, LINE);
+    }
+}
@@ -0,0 +1,12 @@
+package com.foodregistry.security;
+
+/**
+ * Kinds of audited action, for filtering the audit log.
+ */
+public enum AuditAction {
+    ORDER,          // An order was paid
+    REFUND,         // A paid order was refunded
+    PRICE_CHANGE,   // A menu price was modified
+    MENU_IMPORT,    // The whole menu was replaced from a catalogue
+    OTHER
+}
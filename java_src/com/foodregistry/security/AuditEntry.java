@@ -0,0 +1,92 @@
+package com.foodregistry.security;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One audited action.
+ */
+public final class AuditEntry {
+    static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final long sequence;
+    private final long timestamp;
+    private final String username;
+    private final String employeeId;
+    private final AuditAction action;
+    private final int orderNumber;
+    private final long amountCents;
+    private final String detail;
+
+    public AuditEntry(long sequence, long timestamp, String username, String employeeId, AuditAction action,
+                      int orderNumber, long amountCents, String detail) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.username = username;
+        this.employeeId = employeeId;
+        this.action = action;
+        this.orderNumber = orderNumber;
+        this.amountCents = amountCents;
+        this.detail = detail;
+    }
+
+    /**
+     * @return The entry's position in the log; also the paging cursor.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    /**
+     * @return The order the action concerns, or 0 if none.
+     */
+    public int getOrderNumber() {
+        return orderNumber;
+    }
+
+    /**
+     * @return The amount involved in cents, or 0 if none.
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public LocalDateTime getTime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    StringBuilder appendTo(StringBuilder sb) {
+        formatter.formatTo(getTime(), sb);
+        return sb.append(" - [").append(username).append("] ").append(detail);
+    }
+
+    /**
+     * @return The entry as "yyyy-MM-dd HH:mm:ss - [user] detail".
+     */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(96)).toString();
+    }
+}
@@ -1,19 +1,186 @@
 package com.foodregistry.security;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Records and retrieves user actions.
+ *
+ * Entries go into a preallocated ring buffer without taking a lock. A
+ * background thread turns them into structured entries, indexes them by time
+ * and by user, writes them to day- and size-rotated files and, if enabled,
+ * echoes them to the console, so none of that sits on the checkout path.
+ * The newest entries (the retention window) stay queryable in memory and are
+ * reloaded from the files on startup.
+ * Configured with -Dfoodregistry.audit.dir (empty for memory only),
+ * -Dfoodregistry.audit.retain, -Dfoodregistry.audit.maxbytes and
+ * -Dfoodregistry.audit.console.
  */
-public class AuditLog {
-    private List<String> logs;
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+public class AuditLog implements AutoCloseable {
+    public static final String DIR_PROPERTY = "foodregistry.audit.dir";
+    public static final String RETAIN_PROPERTY = "foodregistry.audit.retain";
+    public static final String MAX_BYTES_PROPERTY = "foodregistry.audit.maxbytes";
+    public static final String CONSOLE_PROPERTY = "foodregistry.audit.console";
+
+    private static final int DEFAULT_RETAIN = 65536;
+    private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    private static final int RING_SIZE = 4096;
+    private static final int DRAIN_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 10_000_000L;
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_SUFFIX = ".log";
+
+    /**
+     * One page of query results, newest first.
+     */
+    public static final class Page {
+        private final List<AuditEntry> entries;
+        private final long nextCursor;
+
+        Page(List<AuditEntry> entries, long nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<AuditEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The cursor for the next (older) page, or -1 if this is the last.
+         */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    // Written by one recorder at a time: the sequence in sequences[] says which entry it holds
+    private static final class Slot {
+        long timestamp;
+        String username;
+        String employeeId;
+        AuditAction action;
+        int orderNumber;
+        long amountCents;
+        String detail;
+    }
+
+    // One user's entry sequences in ascending order; replaced when it has to grow
+    private static final class Postings {
+        final long[] sequences;
+        volatile int size;
+
+        Postings(long[] sequences, int size) {
+            this.sequences = sequences;
+            this.size = size;
+        }
+    }
+
+    // Hand-off ring between recorders and the writer thread
+    private final Slot[] slots = new Slot[RING_SIZE];
+    private final AtomicLongArray sequences = new AtomicLongArray(RING_SIZE); // -1 while empty or being written
+    private final AtomicLong next = new AtomicLong();
+    private volatile long drained;           // entries below this have been taken by the writer
+
+    // Retention window and indexes, written only by the writer thread
+    private final AuditEntry[] window;
+    private final int windowMask;
+    private final ConcurrentHashMap<String, Postings> byUser = new ConcurrentHashMap<>();
+    private volatile long indexed;           // entries below this are in the window and indexes
+    private long lastTimestamp;              // keeps window timestamps non-decreasing for time searches
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final boolean echo;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Owned by the writer thread
+    private OutputStream file;
+    private LocalDate fileDay;
+    private int fileIndex;
+    private long fileBytes;
 
     public AuditLog() {
-        this.logs = new ArrayList<>();
+        this(Paths.get(""));
+    }
+
+    /**
+     * Uses the configured settings, with the log directory resolved against the given data directory.
+     */
+    public AuditLog(Path dataDir) {
+        this(Integer.getInteger(RETAIN_PROPERTY, DEFAULT_RETAIN),
+             configuredDirectory(dataDir),
+             Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES),
+             Boolean.parseBoolean(System.getProperty(CONSOLE_PROPERTY, "true")));
+    }
+
+    /**
+     * @param retain How many of the newest entries stay queryable; rounded up to a power of two.
+     * @param directory Where log files go, or null to keep entries in memory only.
+     * @param maxFileBytes Size at which a day's file rolls over to the next numbered file.
+     * @param echo Whether to print entries to the console.
+     */
+    public AuditLog(int retain, Path directory, long maxFileBytes, boolean echo) {
+        int capacity = Integer.highestOneBit(Math.max(16, retain) - 1) << 1;
+        this.window = new AuditEntry[capacity];
+        this.windowMask = capacity - 1;
+        for (int i = 0; i < RING_SIZE; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, -1);
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.echo = echo;
+        if (directory != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        writer = new Thread(this::drain, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static Path configuredDirectory(Path dataDir) {
+        String dir = System.getProperty(DIR_PROPERTY, "audit");
+        return dir.isEmpty() ? null : dataDir.resolve(dir);
+    }
+
+    /**
+     * @return How many entries are held for queries.
+     */
+    public int size() {
+        return (int) Math.min(indexed, window.length);
+    }
+
+    /**
+     * @return Entries recorded but not yet indexed and written by the writer thread.
+     */
+    public long getBacklog() {
+        return Math.max(0, next.get() - indexed);
     }
 
     /**
@@ -22,17 +189,337 @@ public class AuditLog {
      * @param action The description of the action.
      */
     public void record(User user, String action) {
-        String timestamp = LocalDateTime.now().format(formatter);
-        String logEntry = String.format("%s - [%s] %s", timestamp, user.getUsername(), action);
-        logs.add(logEntry);
-        System.out.println("AUDIT: " + logEntry); // Also print to console
+        record(user, AuditAction.OTHER, 0, 0, action);
+    }
+
+    /**
+     * Records a user action with its structured details.
+     * @param user The user performing the action.
+     * @param action The kind of action.
+     * @param orderNumber The order concerned, or 0.
+     * @param amountCents The amount involved in cents, or 0.
+     * @param detail The description of the action.
+     */
+    public void record(User user, AuditAction action, int orderNumber, long amountCents, String detail) {
+        long timestamp = System.currentTimeMillis();
+        long seq = next.getAndIncrement();
+        // Wait for the writer rather than overwrite entries it hasn't taken yet
+        while (!closed && seq - drained >= RING_SIZE) {
+            LockSupport.parkNanos(100_000L);
+        }
+        int i = (int) (seq & (RING_SIZE - 1));
+        Slot slot = slots[i];
+        sequences.set(i, -1);
+        VarHandle.storeStoreFence();
+        slot.timestamp = timestamp;
+        slot.username = user.getUsername();
+        slot.employeeId = user.getEmployeeId();
+        slot.action = action;
+        slot.orderNumber = orderNumber;
+        slot.amountCents = amountCents;
+        slot.detail = detail;
+        sequences.set(i, seq);
     }
 
     /**
-     * Retrieves all log entries.
+     * Retrieves the entries still in the retention window, oldest first.
+     * Entries recorded in the last few milliseconds may not be visible yet.
      * @return List of log strings.
      */
     public List<String> viewLog() {
-        return new ArrayList<>(logs);
+        flush();
+        long end = indexed;
+        long start = Math.max(0, end - window.length);
+        List<String> entries = new ArrayList<>((int) (end - start));
+        StringBuilder sb = new StringBuilder(128);
+        for (long seq = start; seq < end; seq++) {
+            AuditEntry entry = entryAt(seq);
+            if (entry == null) continue;
+            sb.setLength(0);
+            entries.add(entry.appendTo(sb).toString());
+        }
+        return entries;
+    }
+
+    /**
+     * Finds entries in the retention window, newest first.
+     * @param username Only this user's entries, or null for everyone.
+     * @param action Only this kind of action, or null for all.
+     * @param fromMillis Earliest timestamp to include.
+     * @param toMillis Timestamp to stop before (exclusive).
+     * @param cursor A previous page's next cursor, or -1 to start at the newest entry.
+     * @param limit Maximum entries to return.
+     */
+    public Page query(String username, AuditAction action, long fromMillis, long toMillis, long cursor, int limit) {
+        limit = Math.max(1, limit);
+        long hi = indexed;
+        long lo = Math.max(0, hi - window.length);
+        if (cursor >= 0 && cursor < hi) hi = cursor;
+        if (lo < hi) lo = firstAtOrAfter(lo, hi, fromMillis);
+        if (lo < hi) hi = firstAtOrAfter(lo, hi, toMillis);
+
+        List<AuditEntry> found = new ArrayList<>(Math.min(limit, 256));
+        long nextCursor = -1;
+        if (username != null) {
+            Postings postings = byUser.get(username);
+            if (postings != null) {
+                int size = postings.size;
+                long[] seqs = postings.sequences;
+                for (int k = lowerBound(seqs, size, hi) - 1; k >= 0 && seqs[k] >= lo; k--) {
+                    AuditEntry entry = entryAt(seqs[k]);
+                    if (entry == null || (action != null && entry.getAction() != action)) continue;
+                    if (found.size() == limit) {
+                        nextCursor = found.get(limit - 1).getSequence();
+                        break;
+                    }
+                    found.add(entry);
+                }
+            }
+        } else {
+            for (long seq = hi - 1; seq >= lo; seq--) {
+                AuditEntry entry = entryAt(seq);
+                if (entry == null || (action != null && entry.getAction() != action)) continue;
+                if (found.size() == limit) {
+                    nextCursor = found.get(limit - 1).getSequence();
+                    break;
+                }
+                found.add(entry);
+            }
+        }
+        return new Page(found, nextCursor);
+    }
+
+    /**
+     * Waits until every entry recorded before this call has been indexed and written.
+     */
+    public void flush() {
+        long target = next.get();
+        if (indexed < target) LockSupport.unpark(writer);
+        while (writer.isAlive() && indexed < target) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    /**
+     * Writes out the remaining entries and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private AuditEntry entryAt(long seq) {
+        AuditEntry entry = window[(int) (seq & windowMask)];
+        // A different sequence means the slot has since been reused for a newer entry
+        return entry != null && entry.getSequence() == seq ? entry : null;
+    }
+
+    // First sequence in [lo, hi) whose timestamp is at or after the given time
+    private long firstAtOrAfter(long lo, long hi, long timestamp) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            AuditEntry entry = entryAt(mid);
+            if (entry == null || entry.getTimestamp() < timestamp) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int lowerBound(long[] values, int size, long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void drain() {
+        long seq = drained;
+        StringBuilder sb = new StringBuilder(128);
+        while (true) {
+            int taken = 0;
+            int i = (int) (seq & (RING_SIZE - 1));
+            while (taken < DRAIN_BATCH && sequences.get(i) == seq) {
+                Slot slot = slots[i];
+                AuditEntry entry = new AuditEntry(seq, Math.max(lastTimestamp, slot.timestamp), slot.username,
+                        slot.employeeId, slot.action, slot.orderNumber, slot.amountCents, slot.detail);
+                index(entry);
+                if (echo) {
+                    sb.setLength(0);
+                    System.out.println(entry.appendTo(sb.append("AUDIT: ")));
+                }
+                if (directory != null) writeToFile(entry, sb);
+                seq++;
+                taken++;
+                i = (int) (seq & (RING_SIZE - 1));
+            }
+            if (taken > 0) flushFile();
+            indexed = seq;
+            drained = seq;
+            if (taken == 0) {
+                if (closed && seq >= next.get()) break;
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeFile();
+    }
+
+    private void index(AuditEntry entry) {
+        long seq = entry.getSequence();
+        lastTimestamp = entry.getTimestamp();
+        window[(int) (seq & windowMask)] = entry;
+
+        Postings postings = byUser.get(entry.getUsername());
+        if (postings == null || postings.size == postings.sequences.length) {
+            // Grow, dropping sequences that have left the window
+            int size = postings == null ? 0 : postings.size;
+            int live = postings == null ? 0 : lowerBound(postings.sequences, size, seq - window.length + 1);
+            long[] grown = new long[Math.max(16, (size - live) * 2)];
+            if (postings != null) System.arraycopy(postings.sequences, live, grown, 0, size - live);
+            postings = new Postings(grown, size - live);
+            byUser.put(entry.getUsername(), postings);
+        }
+        postings.sequences[postings.size] = seq;
+        postings.size = postings.size + 1;
+    }
+
+    // File lines: epoch millis, local time, user, employee id, action, order number, amount cents, detail
+    private void writeToFile(AuditEntry entry, StringBuilder sb) {
+        sb.setLength(0);
+        sb.append(entry.getTimestamp()).append('\t');
+        AuditEntry.formatter.formatTo(entry.getTime(), sb);
+        sb.append('\t').append(entry.getUsername())
+          .append('\t').append(entry.getEmployeeId())
+          .append('\t').append(entry.getAction().name())
+          .append('\t').append(entry.getOrderNumber())
+          .append('\t').append(entry.getAmountCents())
+          .append('\t');
+        String detail = entry.getDetail();
+        for (int c = 0; c < detail.length(); c++) {
+            char ch = detail.charAt(c);
+            sb.append(ch == '\t' || ch == '\n' || ch == '\r' ? ' ' : ch);
+        }
+        sb.append('\n');
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        LocalDate day = entry.getTime().toLocalDate();
+        try {
+            if (file == null || !day.equals(fileDay)) {
+                openFile(day, 0);
+            } else if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+                openFile(day, fileIndex + 1);
+            }
+            file.write(bytes);
+            fileBytes += bytes.length;
+        } catch (IOException e) {
+            System.err.println("Failed to write audit log: " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    // Reads the newest retained entries back from the files
+    private void load() throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path p : stream) {
+                if (p.getFileName().toString().length() >= FILE_PREFIX.length() + 10 + FILE_SUFFIX.length()) files.add(p);
+            }
+        }
+        files.sort(Comparator.comparing(AuditLog::fileDayOf).thenComparingInt(AuditLog::fileIndexOf));
+        Collections.reverse(files);
+
+        Deque<String> lines = new ArrayDeque<>();
+        for (Path path : files) {
+            List<String> fileLines = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) fileLines.add(line);
+            }
+            for (int i = fileLines.size() - 1; i >= 0 && lines.size() < window.length; i--) {
+                lines.addFirst(fileLines.get(i));
+            }
+            if (lines.size() >= window.length) break;
+        }
+
+        long seq = 0;
+        for (String line : lines) {
+            String[] cols = line.split("\t", 8);
+            if (cols.length != 8) continue;
+            try {
+                index(new AuditEntry(seq, Math.max(lastTimestamp, Long.parseLong(cols[0])), cols[2], cols[3],
+                        AuditAction.valueOf(cols[4]), Integer.parseInt(cols[5]), Long.parseLong(cols[6]), cols[7]));
+                seq++;
+            } catch (IllegalArgumentException e) {
+                // Not a structured line; skip it
+            }
+        }
+        next.set(seq);
+        drained = seq;
+        indexed = seq;
+    }
+
+    private static String fileDayOf(Path path) {
+        String name = path.getFileName().toString();
+        return name.substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 10);
+    }
+
+    private static int fileIndexOf(Path path) {
+        String name = path.getFileName().toString();
+        String rest = name.substring(FILE_PREFIX.length() + 10, name.length() - FILE_SUFFIX.length());
+        try {
+            return rest.isEmpty() ? 0 : Integer.parseInt(rest.substring(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Opens the first file for the day at or after fromIndex that still has room
+    private void openFile(LocalDate day, int fromIndex) throws IOException {
+        closeFile();
+        Files.createDirectories(directory);
+        int index = fromIndex;
+        Path path = fileName(day, index);
+        while (Files.exists(path) && Files.size(path) >= maxFileBytes) {
+            path = fileName(day, ++index);
+        }
+        fileBytes = Files.exists(path) ? Files.size(path) : 0;
+        file = new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 8192);
+        fileDay = day;
+        fileIndex = index;
+    }
+
+    private Path fileName(LocalDate day, int index) {
+        return directory.resolve(FILE_PREFIX + day + (index == 0 ? "" : "." + index) + FILE_SUFFIX);
+    }
+
+    private void flushFile() {
+        if (file == null) return;
+        try {
+            file.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to write audit log: " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    private void closeFile() {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+        file = null;
     }
 }
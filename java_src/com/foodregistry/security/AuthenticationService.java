@@ -2,46 +2,34 @@ package com.foodregistry.security;
 
 import java.security.MessageDigest;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.io.*;
-import java.util.Scanner;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.io.IOException;
 
 /**
  * Handles user authentication and permission checking.
  */
 public class AuthenticationService {
-    private Map<String, User> users;
+    private UserStore users;
     private User currentUser;
     private static final String USERS_FILE = "users.txt";
 
     public AuthenticationService() {
-        users = new HashMap<>();
+        this(Paths.get(USERS_FILE));
+    }
+
+    /**
+     * @param usersFile The account snapshot; changes are logged beside it.
+     */
+    public AuthenticationService(Path usersFile) {
+        users = new UserStore(usersFile);
         loadUsers();
     }
 
     private void loadUsers() {
-        File file = new File(USERS_FILE);
-        if (!file.exists()) {
-            createDefaultUsers();
-            return;
-        }
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    String username = parts[0];
-                    String passwordHash = parts[1];
-                    try {
-                        Role role = Role.valueOf(parts[2]);
-                        String employeeId = parts[3];
-                        users.put(username, new User(username, passwordHash, role, employeeId));
-                    } catch (IllegalArgumentException e) {
-                        System.err.println("Invalid role for user " + username);
-                    }
-                }
+        try {
+            if (!users.load()) {
+                createDefaultUsers();
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -50,28 +38,75 @@ public class AuthenticationService {
     }
 
     private void createDefaultUsers() {
-        // cashier01 / cash123
-        addUser("cashier01", hashPassword("cash123"), Role.CASHIER, "EMP001");
-        // manager01 / mgr123
-        addUser("manager01", hashPassword("mgr123"), Role.MANAGER, "MGR001");
-        saveUsers();
-    }
-
-    private void saveUsers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(USERS_FILE))) {
-            for (User user : users.values()) {
-                writer.println(user.getUsername() + "," + 
-                             user.getPasswordHash() + "," + 
-                             user.getRole() + "," + 
-                             user.getEmployeeId());
-            }
+        try {
+            // cashier01 / cash123
+            users.add(new User("cashier01", hashPassword("cash123"), Role.CASHIER, "EMP001"));
+            // manager01 / mgr123
+            users.add(new User("manager01", hashPassword("mgr123"), Role.MANAGER, "MGR001"));
+            users.compact();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void addUser(String username, String passwordHash, Role role, String employeeId) {
-        users.put(username, new User(username, passwordHash, role, employeeId));
+    /**
+     * @return The account store, for lookups by username or employee id.
+     */
+    public UserStore getUserStore() {
+        return users;
+    }
+
+    /**
+     * Adds a staff account.
+     * @param actor The user making the change; needs MANAGE_USERS.
+     * @return The new account.
+     * @throws IllegalArgumentException if the username or employee id is taken or invalid.
+     */
+    public User addUser(User actor, String username, String password, Role role, String employeeId)
+            throws UnauthorizedException, IOException {
+        requireManageUsers(actor);
+        User user = new User(username, hashPassword(password), role, employeeId);
+        if (!users.add(user)) {
+            throw new IllegalArgumentException("Username or employee id already in use: " + username + " / " + employeeId);
+        }
+        return user;
+    }
+
+    /**
+     * Changes a staff account's role, including in sessions already open.
+     * @return The updated account, or null if there is no such user.
+     */
+    public User changeRole(User actor, String username, Role role) throws UnauthorizedException, IOException {
+        requireManageUsers(actor);
+        return users.changeRole(username, role);
+    }
+
+    /**
+     * Deactivates a staff account so it can no longer log in, and its open
+     * sessions lose every permission.
+     * @return The updated account, or null if there is no such user.
+     */
+    public User deactivateUser(User actor, String username) throws UnauthorizedException, IOException {
+        requireManageUsers(actor);
+        if (actor.getUsername().equals(username)) {
+            throw new IllegalArgumentException("Cannot deactivate your own account");
+        }
+        return users.setActive(username, false);
+    }
+
+    /**
+     * Reactivates a deactivated staff account.
+     * @return The updated account, or null if there is no such user.
+     */
+    public User reactivateUser(User actor, String username) throws UnauthorizedException, IOException {
+        requireManageUsers(actor);
+        return users.setActive(username, true);
+    }
+
+    private void requireManageUsers(User actor) throws UnauthorizedException {
+        if (!hasPermission(actor, Permission.MANAGE_USERS)) {
+            throw new UnauthorizedException("Access Denied: MANAGE_USERS requires MANAGER privileges");
+        }
     }
 
     /**
@@ -108,14 +143,30 @@ public class AuthenticationService {
      * @return true if login successful, false otherwise.
      */
     public boolean login(String username, String password) {
-        User user = users.get(username);
-        if (user != null && user.getPasswordHash().equals(hashPassword(password))) {
+        User user = authenticate(username, password);
+        if (user != null) {
             currentUser = user;
             return true;
         }
         return false;
     }
 
+    /**
+     * Verifies user credentials without changing the service-wide current user.
+     * Used by per-till sessions, which keep their own signed-in user.
+     * @param username The username.
+     * @param password The plain text password.
+     * @return The matching User, or null if the credentials are wrong.
+     */
+    public User authenticate(String username, String password) {
+        if (username == null || password == null) return null;
+        User user = users.get(username);
+        if (user != null && user.isActive() && user.getPasswordHash().equals(hashPassword(password))) {
+            return user;
+        }
+        return null;
+    }
+
     /**
      * Logs out the current user.
      */
@@ -137,7 +188,29 @@ public class AuthenticationService {
      * @return true if authorized, false otherwise.
      */
     public boolean hasPermission(Permission permission) {
-        if (currentUser == null) return false;
-        return currentUser.getRole().hasPermission(permission);
+        return hasPermission(currentUser, permission);
+    }
+
+    /**
+     * Checks if the given user has the specified permission.
+     * @param user The user to check, may be null.
+     * @param permission The permission to check.
+     * @return true if authorized, false otherwise.
+     */
+    public boolean hasPermission(User user, Permission permission) {
+        User account = currentAccount(user);
+        return account != null && account.getRole().hasPermission(permission);
+    }
+
+    /**
+     * Sessions keep the User they logged in as; this is the account as it is
+     * now, so role changes and deactivation reach sessions already open.
+     * @param user A logged-in user, may be null.
+     * @return The stored account, or null if it is gone or deactivated.
+     */
+    public User currentAccount(User user) {
+        if (user == null) return null;
+        User stored = users.get(user.getUsername());
+        return stored != null && stored.isActive() ? stored : null;
     }
 }
@@ -8,12 +8,18 @@ public class User {
     private String passwordHash;
     private Role role;
     private String employeeId;
+    private boolean active;
 
     public User(String username, String passwordHash, Role role, String employeeId) {
+        this(username, passwordHash, role, employeeId, true);
+    }
+
+    public User(String username, String passwordHash, Role role, String employeeId, boolean active) {
         this.username = username;
         this.passwordHash = passwordHash;
         this.role = role;
         this.employeeId = employeeId;
+        this.active = active;
     }
 
     public String getUsername() {
@@ -31,4 +37,11 @@ public class User {
     public String getEmployeeId() {
         return employeeId;
     }
+
+    /**
+     * @return false once the account has been deactivated; it can no longer log in.
+     */
+    public boolean isActive() {
+        return active;
+    }
 }
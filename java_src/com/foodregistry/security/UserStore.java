@@ -0,0 +1,242 @@
+package com.foodregistry.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Staff accounts, indexed by username and by employee id.
+ *
+ * The snapshot file holds one account per line
+ * (username,passwordHash,ROLE,employeeId[,INACTIVE]). Changes made since the
+ * snapshot are appended to a log beside it (users.txt.log) and replayed on
+ * load, so an add, role change or deactivation writes one short line instead
+ * of the whole file. Once the log passes a threshold the snapshot is
+ * rewritten and the log emptied.
+ */
+public class UserStore {
+    private static final String ADD = "ADD";
+    private static final String ROLE = "ROLE";
+    private static final String PASSWORD = "PASSWORD";
+    private static final String DEACTIVATE = "DEACTIVATE";
+    private static final String ACTIVATE = "ACTIVATE";
+    private static final String INACTIVE = "INACTIVE";
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    private final Path snapshot;
+    private final Path changeLog;
+    private final ConcurrentHashMap<String, User> byUsername = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, User> byEmployeeId = new ConcurrentHashMap<>();
+    private int logRecords; // guarded by this
+
+    public UserStore(Path snapshot) {
+        this.snapshot = snapshot;
+        this.changeLog = snapshot.resolveSibling(snapshot.getFileName() + ".log");
+    }
+
+    /**
+     * Reads the snapshot and replays the change log.
+     * @return false if there is no snapshot yet.
+     */
+    public synchronized boolean load() throws IOException {
+        byUsername.clear();
+        byEmployeeId.clear();
+        if (!Files.exists(snapshot)) return false;
+
+        String[] fields = new String[5];
+        byte[] data = Files.readAllBytes(snapshot);
+        for (int start = 0; start < data.length; ) {
+            int end = lineEnd(data, start);
+            int count = split(data, start, end, fields);
+            if (count == 4 || count == 5) {
+                try {
+                    boolean active = count == 4 || !INACTIVE.equals(fields[4]);
+                    put(new User(fields[0], fields[1], Role.valueOf(fields[2]), fields[3], active));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid role for user " + fields[0]);
+                }
+            }
+            start = end + 1;
+        }
+
+        logRecords = 0;
+        if (Files.exists(changeLog)) {
+            data = Files.readAllBytes(changeLog);
+            for (int start = 0; start < data.length; ) {
+                int end = lineEnd(data, start);
+                // A line without its newline was cut off mid-write; ignore it
+                if (end < data.length) {
+                    apply(fields, split(data, start, end, fields));
+                    logRecords++;
+                }
+                start = end + 1;
+            }
+            if (logRecords > compactThreshold()) compact();
+        }
+        return true;
+    }
+
+    public User get(String username) {
+        return username == null ? null : byUsername.get(username);
+    }
+
+    public User getByEmployeeId(String employeeId) {
+        return employeeId == null ? null : byEmployeeId.get(employeeId);
+    }
+
+    public int size() {
+        return byUsername.size();
+    }
+
+    public Collection<User> getAll() {
+        return Collections.unmodifiableCollection(byUsername.values());
+    }
+
+    /**
+     * Adds an account.
+     * @return false if the username or employee id is already taken.
+     */
+    public synchronized boolean add(User user) throws IOException {
+        checkField(user.getUsername());
+        checkField(user.getEmployeeId());
+        if (byUsername.containsKey(user.getUsername()) || byEmployeeId.containsKey(user.getEmployeeId())) {
+            return false;
+        }
+        append(ADD, user.getUsername(), user.getPasswordHash(), user.getRole().name(), user.getEmployeeId());
+        put(user);
+        return true;
+    }
+
+    /**
+     * @return The updated account, or null if there is no such user.
+     */
+    public synchronized User changeRole(String username, Role role) throws IOException {
+        User user = get(username);
+        if (user == null) return null;
+        append(ROLE, username, role.name());
+        return put(new User(username, user.getPasswordHash(), role, user.getEmployeeId(), user.isActive()));
+    }
+
+    /**
+     * @return The updated account, or null if there is no such user.
+     */
+    public synchronized User changePassword(String username, String passwordHash) throws IOException {
+        User user = get(username);
+        if (user == null) return null;
+        append(PASSWORD, username, passwordHash);
+        return put(new User(username, passwordHash, user.getRole(), user.getEmployeeId(), user.isActive()));
+    }
+
+    /**
+     * @return The updated account, or null if there is no such user.
+     */
+    public synchronized User setActive(String username, boolean active) throws IOException {
+        User user = get(username);
+        if (user == null) return null;
+        append(active ? ACTIVATE : DEACTIVATE, username);
+        return put(new User(username, user.getPasswordHash(), user.getRole(), user.getEmployeeId(), active));
+    }
+
+    /**
+     * Rewrites the snapshot from memory and empties the change log.
+     */
+    public synchronized void compact() throws IOException {
+        List<User> users = new ArrayList<>(byUsername.values());
+        StringBuilder sb = new StringBuilder(users.size() * 96);
+        for (User user : users) {
+            sb.append(user.getUsername()).append(',')
+              .append(user.getPasswordHash()).append(',')
+              .append(user.getRole().name()).append(',')
+              .append(user.getEmployeeId());
+            if (!user.isActive()) sb.append(',').append(INACTIVE);
+            sb.append(System.lineSeparator());
+        }
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        Files.write(temp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(changeLog);
+        logRecords = 0;
+    }
+
+    private User put(User user) {
+        User previous = byUsername.put(user.getUsername(), user);
+        if (previous != null && !previous.getEmployeeId().equals(user.getEmployeeId())) {
+            byEmployeeId.remove(previous.getEmployeeId(), previous);
+        }
+        byEmployeeId.put(user.getEmployeeId(), user);
+        return user;
+    }
+
+    private void apply(String[] fields, int count) {
+        if (count < 2) return;
+        String username = fields[1];
+        User user = byUsername.get(username);
+        try {
+            if (ADD.equals(fields[0]) && count == 5) {
+                put(new User(username, fields[2], Role.valueOf(fields[3]), fields[4]));
+            } else if (user == null) {
+                return;
+            } else if (ROLE.equals(fields[0]) && count == 3) {
+                put(new User(username, user.getPasswordHash(), Role.valueOf(fields[2]), user.getEmployeeId(), user.isActive()));
+            } else if (PASSWORD.equals(fields[0]) && count == 3) {
+                put(new User(username, fields[2], user.getRole(), user.getEmployeeId(), user.isActive()));
+            } else if (DEACTIVATE.equals(fields[0]) || ACTIVATE.equals(fields[0])) {
+                put(new User(username, user.getPasswordHash(), user.getRole(), user.getEmployeeId(), ACTIVATE.equals(fields[0])));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid user change for " + username);
+        }
+    }
+
+    private void append(String... fields) throws IOException {
+        StringBuilder sb = new StringBuilder(128);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(fields[i]);
+        }
+        sb.append('\n');
+        Files.write(changeLog, sb.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (++logRecords > compactThreshold()) compact();
+    }
+
+    private int compactThreshold() {
+        return Math.max(MIN_COMPACT_RECORDS, byUsername.size() / 4);
+    }
+
+    private static void checkField(String value) {
+        if (value == null || value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Invalid user field: " + value);
+        }
+    }
+
+    private static int lineEnd(byte[] data, int start) {
+        int i = start;
+        while (i < data.length && data[i] != '\n') i++;
+        return i;
+    }
+
+    // Splits a comma-separated line (ignoring a trailing \r) into fields; returns the field count
+    private static int split(byte[] data, int start, int end, String[] fields) {
+        if (end > start && data[end - 1] == '\r') end--;
+        if (start == end) return 0;
+        int count = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || data[i] == ',') {
+                if (count == fields.length) return count + 1;
+                fields[count++] = new String(data, fieldStart, i - fieldStart, StandardCharsets.UTF_8);
+                fieldStart = i + 1;
+            }
+        }
+        return count;
+    }
+}
@@ -3,8 +3,25 @@ package com.foodregistry.test;
 import com.foodregistry.*;
 import com.foodregistry.security.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.nio.charset.StandardCharsets;
 
 public class AllTests {
     private static int testsPassed = 0;
@@ -19,29 +36,49 @@ public class AllTests {
         try {
             // 1. Data Models
             testMenuItem();
+            testMenuIndex();
             
             // 2. Core Logic
             testOrderCalculationLogic();
+            testMoneyArithmetic();
+            testLatencyHistogram();
             
             // 3. Security
             testAuthentication();
+            testUserStore();
             
             // 4. Restaurant Operations (The main business logic)
             testRestaurantAccessControl();
             testOrderProcessing();
             testPaymentProcessing();
+            testReceiptRenderers();
+            testReceiptArchive();
+            testBatchOrder();
             testOrderClearing(); // New
+            testSessionIsolation();
+            testOrderJournalRecovery();
             
             // 5. Reporting & Auditing
             testDailyReportGeneration(); // New
+            testSalesRollups();
             testAuditLogRecording(); // New
+            testMetrics();
             
             // 6. Manager Operations
             testManagerPrivileges();
+            testMenuSnapshots();
+            testMenuCatalogImport();
+            testOutletRegistry();
+
+            // 7. Web Pages
+            testPageTemplate();
+            testStaticAssetCache();
+            testFormParser();
             
         } catch (Exception e) {
             System.out.println("CRITICAL ERROR IN TEST SUITE: " + e.getMessage());
             e.printStackTrace();
+            testsFailed++;
         }
 
         System.out.println("\n==========================================");
@@ -54,11 +91,21 @@ public class AllTests {
             System.out.println("\n[SUCCESS] ALL FUNCTIONS VERIFIED.");
         } else {
             System.out.println("\n[FAILURE] ERRORS DETECTED.");
+            System.exit(1);
         }
     }
 
     // --- Helper Assertions ---
 
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+
     private static void assertEqual(Object expected, Object actual, String testName) {
         if ((expected == null && actual == null) || (expected != null && expected.equals(actual))) {
             System.out.println("PASS: " + testName);
@@ -89,8 +136,42 @@ public class AllTests {
         assertEqual("Test Item", item.getName(), "Get Name");
         assertEqual(10.00f, item.getPrice(), "Get Price");
         
-        item.setPrice(15.50f);
-        assertEqual(15.50f, item.getPrice(), "Set Price");
+        MenuItem repriced = item.withPrice(15.50f);
+        assertEqual(15.50f, repriced.getPrice(), "Set Price");
+        assertEqual(10.00f, item.getPrice(), "Original Item Unchanged By Price Change");
+    }
+
+    private static void testMenuIndex() {
+        System.out.println("\n[Module: Menu Code Index]");
+        List<MenuItem> menu = new ArrayList<>();
+        menu.add(new MenuItem('N', "Nasi Lemak", 9.00f));
+        menu.add(new MenuItem("NL2", "Nasi Lemak Special", 12.00f));
+        menu.add(new MenuItem("CR-L", "Chicken Rice Large", 10.00f));
+        for (int i = 0; i < 10000; i++) {
+            menu.add(new MenuItem("SKU" + i, "Catalogue Item " + i, 1.00f));
+        }
+        MenuIndex index = MenuIndex.build(menu);
+        
+        assertEqual(0, index.find('N'), "Single Char Code Lookup");
+        assertEqual(0, index.find('n'), "Single Char Lookup Ignores Case");
+        assertEqual(1, index.find("nl2"), "Multi Char SKU Lookup Ignores Case");
+        assertEqual(2, index.find("CR-L"), "SKU With Punctuation");
+        assertEqual(9002, index.find("SKU8999"), "Lookup In 10k Catalogue");
+        assertEqual(-1, index.find("SKU10000"), "Unknown SKU");
+        assertEqual(-1, index.find('Z'), "Unknown Code");
+        assertEqual("NL2", menu.get(1).getSku(), "SKU Kept On Item");
+        assertEqual('N', menu.get(1).getCode(), "Code Is First SKU Char");
+
+        // Keys fold the same way under any default locale; Turkish upper-cases 'i' to a dotted I
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            List<MenuItem> turkish = new ArrayList<>();
+            turkish.add(new MenuItem("fish", "Fish and Chips", 15.00f));
+            assertEqual(0, MenuIndex.build(turkish).find("FISH"), "Index Ignores Default Locale");
+        } finally {
+            Locale.setDefault(locale);
+        }
     }
 
     private static void testOrderCalculationLogic() {
@@ -122,10 +203,90 @@ public class AllTests {
         // Scenario 4: Negative Handling
         order.addItem(0, -100); // Should go to 0
         assertEqual(0, order.getQuantity(0), "Negative Add Resets to 0");
+        order.addItem(0, Integer.MAX_VALUE);
+        order.addItem(0, Integer.MAX_VALUE);
+        assertEqual(Order.MAX_LINE_QUANTITY, order.getQuantity(0), "Huge Add Stops At Line Limit");
+        order.addItem(0, -Order.MAX_LINE_QUANTITY);
+        
+        // Scenario 5: Incremental totals match a full recalculation
+        Order incremental = new Order(2);
+        incremental.addItem(0, 2, 10.00f);
+        incremental.addItem(1, 1, 20.00f);
+        incremental.addItem(0, -1, 10.00f);
+        assertEqual(30.00f, incremental.getSubtotal(), "Incremental Subtotal");
+        assertEqual(33.00f, incremental.getTotal(), "Incremental Total");
+        assertEqual(2, incremental.getLineCount(), "Line Count Tracks Non-Zero Lines");
+        incremental.addItem(0, -5, 10.00f);
+        incremental.addItem(1, -1, 20.00f);
+        assertTrue(incremental.isEmpty(), "Order Empty After Removing All Lines");
+        assertEqual(0.00f, incremental.getTotal(), "Total Zero When Empty");
+        
+        // Scenario 6: Sparse storage for large menus
+        List<MenuItem> bigMenu = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) bigMenu.add(new MenuItem((char) ('A' + i % 26), "Item " + i, 1.00f));
+        Order sparse = new Order(1000);
+        sparse.addItem(900, 2);
+        sparse.addItem(5, 1);
+        sparse.addItem(400, 3);
+        sparse.calculateTotals(bigMenu);
+        assertEqual(6.00f, sparse.getSubtotal(), "Sparse Order Subtotal");
+        assertEqual(5, sparse.nextLine(0), "Sparse Lines Walk In Menu Order (1)");
+        assertEqual(400, sparse.nextLine(6), "Sparse Lines Walk In Menu Order (2)");
+        assertEqual(-1, sparse.nextLine(901), "Sparse Line Walk Ends");
+        Order sparseCopy = new Order(sparse);
+        sparse.clear();
+        assertEqual(0, sparse.getQuantity(900), "Sparse Clear");
+        assertEqual(2, sparseCopy.getQuantity(900), "Sparse Copy Independent");
     }
 
     
 
+    private static void testMoneyArithmetic() {
+        System.out.println("\n[Module: Fixed-Point Money]");
+        assertEqual(1234L, Money.parse("12.34"), "Parse Two Decimals");
+        assertEqual(850L, Money.parse("8.5"), "Parse One Decimal");
+        assertEqual(900L, Money.parse("9"), "Parse Whole Amount");
+        assertEqual(-5L, Money.parse("-0.05"), "Parse Negative");
+        assertEqual(1235L, Money.parse("12.345"), "Extra Digits Round Half-Up");
+        boolean rejected = false;
+        try {
+            Money.parse("12,34");
+        } catch (NumberFormatException e) {
+            rejected = true;
+        }
+        assertTrue(rejected, "Reject Malformed Amount");
+        
+        assertEqual("12.34", Money.format(1234), "Format Cents");
+        assertEqual("0.05", Money.format(5), "Format Below One");
+        assertEqual("-1.50", Money.format(-150), "Format Negative");
+        assertEqual(86L, Money.percentOf(855, 10), "SST Rounds Half-Up");
+        
+        // 0.10 three thousand times drifts in float but not in cents
+        long cents = 0;
+        for (int i = 0; i < 3000; i++) cents += Money.parse("0.10");
+        assertEqual("300.00", Money.format(cents), "No Drift Over Many Additions");
+    }
+
+    private static void testLatencyHistogram() {
+        System.out.println("\n[Module: Latency Histogram]");
+        LatencyHistogram h = new LatencyHistogram();
+        assertEqual(0L, h.getValueAtPercentile(99), "Empty Histogram Percentile");
+        for (int i = 1; i <= 1000; i++) h.record(i * 1000L); // 1us..1ms
+        h.record(-5);
+        assertEqual(1001L, h.getCount(), "Histogram Count");
+        long p50 = h.getValueAtPercentile(50);
+        assertTrue(Math.abs(p50 - 500_000) <= 500_000 / 50, "p50 Within Bucket Precision");
+        long p99 = h.getValueAtPercentile(99);
+        assertTrue(Math.abs(p99 - 990_000) <= 990_000 / 50, "p99 Within Bucket Precision");
+        assertEqual(1_000_000L, h.getValueAtPercentile(100), "p100 Is Max");
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(Long.MAX_VALUE);
+        h.add(other);
+        assertEqual(Long.MAX_VALUE, h.getMaxNanos(), "Merged Max Including Largest Value");
+        assertEqual(1002L, h.getCount(), "Merged Count");
+    }
+
     private static void testAuthentication() {
         System.out.println("\n[Module: Authentication Service]");
         AuthenticationService auth = new AuthenticationService();
@@ -143,6 +304,74 @@ public class AllTests {
         assertTrue(auth.getCurrentUser() == null, "Logout Clears Session");
     }
 
+    private static void testUserStore() throws Exception {
+        System.out.println("\n[Module: User Store]");
+        Path dir = Files.createTempDirectory("users");
+        Path file = dir.resolve("users.txt");
+        try {
+            AuthenticationService auth = new AuthenticationService(file);
+            User manager = auth.authenticate("manager01", "mgr123");
+            User cashier = auth.authenticate("cashier01", "cash123");
+            assertTrue(manager != null && Files.exists(file), "Default Users Created");
+
+            boolean denied = false;
+            try {
+                auth.addUser(cashier, "cashier02", "pw", Role.CASHIER, "EMP002");
+            } catch (UnauthorizedException e) {
+                denied = true;
+            }
+            assertTrue(denied, "Cashier Cannot Manage Users");
+
+            auth.addUser(manager, "cashier02", "pw2", Role.CASHIER, "EMP002");
+            auth.addUser(manager, "cashier03", "pw3", Role.CASHIER, "EMP003");
+            User open02 = auth.authenticate("cashier02", "pw2");
+            User open03 = auth.authenticate("cashier03", "pw3");
+            auth.changeRole(manager, "cashier02", Role.MANAGER);
+            auth.deactivateUser(manager, "cashier03");
+            assertTrue(auth.hasPermission(open02, Permission.MANAGE_USERS), "Role Change Reaches Open Session");
+            assertTrue(!auth.hasPermission(open03, Permission.PROCESS_ORDER), "Deactivated User Loses Permissions");
+            assertEqual("cashier02", auth.getUserStore().getByEmployeeId("EMP002").getUsername(), "Lookup By Employee Id");
+            assertTrue(auth.authenticate("cashier03", "pw3") == null, "Deactivated User Cannot Log In");
+            assertTrue(Files.exists(dir.resolve("users.txt.log")), "Changes Appended To Log");
+
+            AuthenticationService reloaded = new AuthenticationService(file);
+            User promoted = reloaded.authenticate("cashier02", "pw2");
+            assertTrue(promoted != null && promoted.getRole() == Role.MANAGER, "Role Change Survives Reload");
+            assertTrue(reloaded.authenticate("cashier03", "pw3") == null, "Deactivation Survives Reload");
+
+            reloaded.getUserStore().compact();
+            assertTrue(!Files.exists(dir.resolve("users.txt.log")), "Compaction Empties Log");
+            AuthenticationService compacted = new AuthenticationService(file);
+            assertEqual(4, compacted.getUserStore().size(), "Compacted Snapshot Keeps All Users");
+            assertTrue(!compacted.getUserStore().get("cashier03").isActive(), "Compacted Snapshot Keeps Deactivation");
+        } finally {
+            Files.deleteIfExists(dir.resolve("users.txt.log"));
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+
+        // A till already logged in as an account that is then deactivated is refused
+        Path shop = Files.createTempDirectory("deactivated");
+        Restaurant res = new Restaurant(shop);
+        try {
+            User boss = res.getAuthService().authenticate("manager01", "mgr123");
+            res.getAuthService().addUser(boss, "manager02", "pw", Role.MANAGER, "MGR002");
+            Session open = res.getSessions().create();
+            open.setUser(res.getAuthService().authenticate("manager02", "pw"));
+            res.getAuthService().deactivateUser(boss, "manager02");
+            boolean refused = false;
+            try {
+                res.modifyMenuPriceCents(open, "N", 100);
+            } catch (UnauthorizedException e) {
+                refused = true;
+            }
+            assertTrue(refused, "Deactivated User's Open Session Refused");
+        } finally {
+            res.close();
+            deleteTree(shop);
+        }
+    }
+
     private static void testRestaurantAccessControl() {
         System.out.println("\n[Module: Restaurant Access Control]");
         Restaurant res = new Restaurant();
@@ -207,12 +436,175 @@ public class AllTests {
             assertTrue(result.contains("Change given"), "Calculate Change");
             assertTrue(result.contains("Receipt Order"), "Generate Receipt");
             
+            // The receipt is archived in the background; reading it back waits for it
+            String receiptNo = result.substring(result.indexOf('#') + 1, result.indexOf("</h3>"));
+            byte[] archived = res.getReceiptWriter().read(Integer.parseInt(receiptNo));
+            assertTrue(archived != null && new String(archived, StandardCharsets.UTF_8).contains("Order: #" + receiptNo),
+                "Receipt Archived Under Its Number");
+            
         } catch (Exception e) {
             System.out.println("FAIL: Exception in Payment: " + e.getMessage());
             testsFailed++;
         }
     }
     
+    private static void testReceiptRenderers() {
+        System.out.println("\n[Module: Receipt Rendering]");
+        List<MenuItem> items = new ArrayList<>();
+        items.add(new MenuItem('N', "Nasi Lemak", 9.00f));
+        items.add(new MenuItem("CR-L", "Chicken Rice", 8.50f));
+        MenuSnapshot menu = new MenuSnapshot(1, items);
+        Order order = new Order(menu);
+        order.addItem(0, 2);
+        order.addItem(1, 1);
+        order.calculateTotals();
+        Receipt receipt = new Receipt(order, 7, 3000);
+
+        String n = System.lineSeparator();
+        String sep = "====================================" + n;
+        String banner = "= * === * === * === * === * ==" + n;
+        ReceiptRenderer text = new TextReceiptRenderer();
+        ReceiptBuffer buffer = new ReceiptBuffer(16);
+        text.render(receipt, buffer);
+        assertEqual(banner + "H & S Restaurant Meal Billing System" + n + banner + n
+            + "Order: #7" + n + n + "Items in bill:" + n
+            + "(N) [RM 9.00] Nasi Lemak × 2 = RM 18.00" + n
+            + "(CR-L) [RM 8.50] Chicken Rice × 1 = RM 8.50" + n
+            + sep + " Subtotal: RM 26.50" + n + " SST charge 10%: RM 2.65" + n + " Grand total: RM 29.15" + n
+            + sep + "Amount received: RM 30.00" + n + " Change given: RM 0.85" + n
+            + sep + "Thank you and have a nice day ahead!" + n,
+            buffer.toString(), "Text Receipt Layout");
+
+        ReceiptRenderer html = new HtmlReceiptRenderer();
+        assertEqual("<h3>Receipt Order: #7</h3><div class='receipt'>Items in bill:<br>"
+            + "(N) [RM 9.00] Nasi Lemak x 2 = RM 18.00<br>(CR-L) [RM 8.50] Chicken Rice x 1 = RM 8.50<br>"
+            + "<hr>Subtotal: RM 26.50<br>SST charge 10%: RM 2.65<br>Grand total: RM 29.15<br>"
+            + "<hr>Amount received: RM 30.00<br>Change given: RM 0.85<br>"
+            + "<hr>Thank you and have a nice day ahead!</div>",
+            html.render(receipt), "HTML Receipt Layout");
+
+        // Cached line prefixes follow the menu version each order was priced against
+        MenuSnapshot repriced = menu.withPrice(0, 1000);
+        Order next = new Order(repriced);
+        next.addItem(0, 1);
+        next.calculateTotals();
+        assertTrue(text.render(new Receipt(next, 8, 1100)).contains("(N) [RM 10.00] Nasi Lemak × 1 = RM 10.00"),
+            "Receipt Uses New Version Prices");
+        text.render(receipt, buffer.reset());
+        assertTrue(buffer.toString().contains("(N) [RM 9.00] Nasi Lemak × 2"), "Receipt Of Older Version Keeps Its Prices");
+    }
+
+    private static void testReceiptArchive() throws Exception {
+        System.out.println("\n[Module: Receipt Archive]");
+        ZoneId utc = ZoneId.of("UTC");
+        long mondayNoon = LocalDate.of(2026, 1, 5).atTime(12, 0).atZone(utc).toInstant().toEpochMilli();
+        long tuesdayNoon = mondayNoon + 24L * 60 * 60 * 1000;
+        for (boolean compress : new boolean[] {false, true}) {
+            String mode = compress ? " (Compressed)" : "";
+            Path dir = Files.createTempDirectory("receipts");
+            try {
+                ReceiptArchive archive = new ReceiptArchive(dir, compress, utc);
+                for (int n = 1; n <= 300; n++) {
+                    archive.append(n, ("Receipt #" + n + " " + "x".repeat(n)).getBytes(StandardCharsets.UTF_8), mondayNoon + n);
+                }
+                assertEqual("Receipt #7 xxxxxxx", new String(archive.read(7), StandardCharsets.UTF_8), "Open Day Lookup" + mode);
+                archive.append(301, "Receipt #301".getBytes(StandardCharsets.UTF_8), tuesdayNoon);
+                assertTrue(archive.isClosed(LocalDate.of(2026, 1, 5)), "Day Closed When The Next Starts" + mode);
+                assertEqual(compress, Files.exists(dir.resolve("2026-01-05.segz")), "Closed Segment Packed Only If Asked" + mode);
+                assertTrue(new String(archive.read(250), StandardCharsets.UTF_8).endsWith("x".repeat(250)), "Closed Day Lookup" + mode);
+                assertTrue(archive.read(302) == null && archive.read(0) == null, "Unknown Number Not Found" + mode);
+                archive.append(302, "Receipt #302".getBytes(StandardCharsets.UTF_8), tuesdayNoon + 1);
+                archive.close();
+
+                // A torn append: a whole index entry whose receipt never reached the segment
+                try (RandomAccessFile index = new RandomAccessFile(dir.resolve("2026-01-06.open").toFile(), "rw")) {
+                    index.seek(index.length());
+                    index.writeInt(303);
+                    index.writeInt(50);
+                    index.writeLong(24);
+                    index.writeInt(0);
+                }
+                ReceiptArchive reopened = new ReceiptArchive(dir, compress, utc);
+                assertTrue(reopened.isClosed(LocalDate.of(2026, 1, 6)), "Stale Open Day Closed On Startup" + mode);
+                assertEqual("Receipt #302", new String(reopened.read(302), StandardCharsets.UTF_8), "Receipts Survive Reopen" + mode);
+                assertTrue(reopened.read(303) == null, "Torn Receipt Dropped" + mode);
+                assertEqual("Receipt #1 x", new String(reopened.read(1), StandardCharsets.UTF_8), "Oldest Receipt Still Found" + mode);
+                reopened.close();
+            } finally {
+                deleteTree(dir);
+            }
+        }
+
+        Restaurant res = new Restaurant();
+        Session till = res.getSessions().create();
+        till.setUser(res.getAuthService().authenticate("cashier01", "cash123"));
+        try {
+            res.processItemCode(till, "N", 1);
+            String paid = res.processPaymentCents(till, 100000);
+            int number = Integer.parseInt(paid.substring(paid.indexOf('#') + 1, paid.indexOf("</h3>")));
+            String reprint = res.reprintReceipt(till, number);
+            assertTrue(reprint != null && reprint.contains("Order: #" + number), "Cashier Reprints Receipt");
+            boolean denied = false;
+            try {
+                res.reprintReceipt(res.getSessions().create(), number);
+            } catch (UnauthorizedException e) {
+                denied = true;
+            }
+            assertTrue(denied, "Reprint Requires Login");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Reprint: " + e.getMessage());
+            testsFailed++;
+        } finally {
+            res.close();
+        }
+    }
+
+    private static void testBatchOrder() {
+        System.out.println("\n[Module: Batch Order API]");
+        Restaurant res = new Restaurant();
+        User cashier = res.getAuthService().authenticate("cashier01", "cash123");
+
+        try {
+            // 2 Hamburgers (5.00) + 1 Nasi Lemak: subtotal, SST and change computed in one call
+            OrderResult result = res.processBatchOrder(cashier, new String[] {"H", "N"}, new int[] {2, 1}, Money.parse("50.00"));
+            assertTrue(result.isPaid() && result.getOrderNumber() > 0, "Batch Order Billed");
+            assertEqual(result.getSubtotalCents() / 10, result.getSSTCents(), "Batch Order SST");
+            assertEqual(result.getSubtotalCents() + result.getSSTCents(), result.getTotalCents(), "Batch Order Total");
+            assertEqual(5000 - result.getTotalCents(), result.getChangeCents(), "Batch Order Change");
+
+            OrderResult unpaid = res.processBatchOrder(cashier, new String[] {"H"}, new int[] {1}, 100);
+            assertTrue(!unpaid.isPaid() && unpaid.getChangeCents() == 0, "Batch Order Insufficient Payment");
+
+            boolean rejected = false;
+            try {
+                res.processBatchOrder(cashier, new String[] {"?"}, new int[] {1}, 1000);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue(rejected, "Batch Order Rejects Unknown Code");
+
+            rejected = false;
+            try {
+                res.processBatchOrder(cashier, new String[] {"H", "h"}, new int[] {500, 500}, Money.parse("99999"));
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue(rejected, "Batch Order Rejects Line Over Limit");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Batch Order: " + e.getMessage());
+            testsFailed++;
+        }
+
+        try {
+            res.processBatchOrder(null, new String[] {"H"}, new int[] {1}, 1000);
+            System.out.println("FAIL: Batch Order Without User (Security Breach)");
+            testsFailed++;
+        } catch (UnauthorizedException e) {
+            System.out.println("PASS: Batch Order Requires Login");
+            testsPassed++;
+        }
+    }
+
     private static void testOrderClearing() {
         System.out.println("\n[Module: Clear Order Function]");
         Restaurant res = new Restaurant();
@@ -234,9 +626,154 @@ public class AllTests {
         }
     }
 
-    private static void testDailyReportGeneration() {
-        System.out.println("\n[Module: Daily Report Generation]");
+    private static void testSessionIsolation() {
+        System.out.println("\n[Module: Per-Till Session Isolation]");
         Restaurant res = new Restaurant();
+        AuthenticationService auth = res.getAuthService();
+        
+        Session till1 = res.getSessions().create();
+        Session till2 = res.getSessions().create();
+        till1.setUser(auth.authenticate("cashier01", "cash123"));
+        till2.setUser(auth.authenticate("manager01", "mgr123"));
+        
+        try {
+            res.processItemCode(till1, 'N', 1);
+            assertTrue(res.getCurrentOrderDisplay(till1).contains("Nasi Lemak"), "Item added to Till 1 order");
+            assertTrue(res.getCurrentOrderDisplay(till2).contains("Nothing"), "Till 2 order unaffected");
+            assertTrue(auth.getCurrentUser() == null, "Session login leaves service user untouched");
+            
+            boolean exceptionThrown = false;
+            try {
+                res.modifyMenuPrice(till1, 'N', 1.00f);
+            } catch (UnauthorizedException e) {
+                exceptionThrown = true;
+            }
+            assertTrue(exceptionThrown, "Permissions checked against session user");
+            
+            assertTrue(res.getSessions().get(till1.getId()) == till1, "Session resolved by id");
+            assertTrue(res.getSessions().get("unknown") == null, "Unknown session id rejected");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Session Isolation: " + e.getMessage());
+            testsFailed++;
+        }
+        
+        SessionStore shortLived = new SessionStore(res::newOrder, -1);
+        Session expired = shortLived.create();
+        assertTrue(shortLived.get(expired.getId()) == null, "Idle Session Expires");
+    }
+
+    private static void testOrderJournalRecovery() {
+        System.out.println("\n[Module: Order Journal Recovery]");
+        try {
+            Path dir = Files.createTempDirectory("journal-test");
+            List<MenuItem> menu = new ArrayList<>();
+            menu.add(new MenuItem('A', "Item A", 10.00f));
+            menu.add(new MenuItem('B', "Item B", 20.00f));
+            Order order = new Order(2);
+            order.addItem(1, 3);
+            
+            OrderJournal journal = new OrderJournal(dir, false);
+            journal.replay(new CountingListener());
+            journal.appendPayment(1, 10000, order, menu);
+            journal.appendPayment(2, 5000, order, menu);
+            journal.appendRefund(1);
+            journal.close();
+            
+            CountingListener replayed = new CountingListener();
+            OrderJournal reopened = new OrderJournal(dir, false);
+            int records = reopened.replay(replayed);
+            assertEqual(3, records, "Journal Replays All Records");
+            assertEqual(2, replayed.payments, "Payments Replayed");
+            assertEqual(1, replayed.refunds, "Refunds Replayed");
+            assertEqual(3, replayed.lastQuantity, "Order Lines Replayed");
+            assertEqual(2, replayed.lastOrderNumber, "Order Numbers Replayed");
+            
+            // Tear the last record: replay must stop cleanly before it
+            reopened.appendPayment(3, 7000, order, menu);
+            reopened.close();
+            File segment = dir.toFile().listFiles()[0];
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                byte[] head = new byte[4096];
+                raf.readFully(head);
+                int end = 8;
+                while (true) {
+                    int len = ((head[end] & 0xff) << 24) | ((head[end + 1] & 0xff) << 16) | ((head[end + 2] & 0xff) << 8) | (head[end + 3] & 0xff);
+                    if (len == 0) break;
+                    end += 8 + len;
+                }
+                raf.seek(end - 1);
+                raf.write(0x7f);
+            }
+            assertEqual(3, new OrderJournal(dir, false).replay(new CountingListener()), "Torn Record Discarded On Replay");
+
+            // Segments whose days are done are deleted; the checkpoint keeps the numbering
+            Path retiring = Files.createTempDirectory("journal-retire");
+            OrderJournal old = new OrderJournal(retiring, false);
+            old.replay(new CountingListener());
+            old.appendPayment(6, 5000, order, menu, 1000);
+            old.appendPayment(7, 5000, order, menu, 2000);
+            assertEqual(0, old.retireBefore(2000, 7), "Segment With Later Records Kept");
+            assertEqual(1, old.retireBefore(3000, 7), "Finished Segment Retired");
+            old.appendPayment(8, 5000, order, menu, 4000);
+            old.close();
+            CountingListener resumed = new CountingListener();
+            assertEqual(1, new OrderJournal(retiring, false).replay(resumed), "Only Live Segment Replayed");
+            assertEqual(7, resumed.checkpoint, "Checkpoint Replayed First");
+            assertEqual(8, resumed.lastOrderNumber, "Records After Checkpoint Replayed");
+            deleteTree(retiring);
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Order Journal: " + e.getMessage());
+            testsFailed++;
+        }
+        
+        // Restarting the restaurant carries on the receipt numbering
+        Restaurant first = new Restaurant();
+        first.getAuthService().login("cashier01", "cash123");
+        Restaurant second = null;
+        try {
+            first.processItemCode('H', 1);
+            String receipt = first.processPayment(10.00f);
+            int number = Integer.parseInt(receipt.substring(receipt.indexOf('#') + 1, receipt.indexOf("</h3>")));
+            first.close();
+            
+            second = new Restaurant();
+            second.getAuthService().login("cashier01", "cash123");
+            second.processItemCode('H', 1);
+            receipt = second.processPayment(10.00f);
+            assertTrue(receipt.contains("Receipt Order: #" + (number + 1) + "<"), "Receipt Numbering Survives Restart");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Journal Restart: " + e.getMessage());
+            testsFailed++;
+        }
+    }
+
+    private static class CountingListener implements OrderJournal.Listener {
+        int payments, refunds, lastQuantity, lastOrderNumber, checkpoint;
+
+        @Override
+        public void onPayment(int orderNumber, long timestampMillis, long amountPaidCents, long subtotalCents, long sstCents,
+                              String[] codes, int[] quantities, int lineCount) {
+            payments++;
+            lastOrderNumber = orderNumber;
+            lastQuantity = lineCount > 0 ? quantities[0] : 0;
+        }
+
+        @Override
+        public void onRefund(int orderNumber, long timestampMillis) {
+            refunds++;
+        }
+
+        @Override
+        public void onCheckpoint(int lastOrderNumber) {
+            checkpoint = lastOrderNumber;
+        }
+    }
+
+    private static void testDailyReportGeneration() throws IOException {
+        System.out.println("\n[Module: Daily Report Generation]");
+        // A fresh data directory, so today's first order is #1
+        Path dir = Files.createTempDirectory("report");
+        Restaurant res = new Restaurant(dir);
         
         // 1. Try as Cashier (Should Fail or be restricted depending on requirements, here restricted)
         res.getAuthService().login("cashier01", "cash123");
@@ -263,13 +800,224 @@ public class AllTests {
             assertTrue(report.contains("DAILY MEAL SALES REPORT"), "Report Header Present");
             assertTrue(report.contains("Grand total"), "Financial Summary Present");
             assertTrue(report.contains("Nasi Lemak"), "Sold Item Listed");
-            
+
+            // Paginated history: one order per page, out-of-range pages clamp to the last
+            res.processItemCode('C', 1);
+            res.processPayment(50.00f);
+            Session session = res.getSessions().getOrCreate(null);
+            session.setUser(res.getAuthService().getCurrentUser());
+            String firstPage = res.generateDailyReport(session, 1, 1);
+            assertTrue(firstPage.contains("Order #1<") && !firstPage.contains("Order #2<"), "Report Page Holds One Order");
+            assertTrue(firstPage.contains("Page 1 of"), "Report Pager Rendered");
+            String lastPage = res.generateDailyReport(session, Integer.MAX_VALUE, 1);
+            assertTrue(!lastPage.contains("Order #1<") && lastPage.contains("value='report'"), "Report Page Clamped To Last");
+            String hugePage = res.generateDailyReport(session, 1, Integer.MAX_VALUE);
+            assertTrue(hugePage.contains("Order #1<") && hugePage.contains("Order #2<"), "Oversized Page Lists Every Order");
+
+            // Summary aggregates follow refunds without rescanning history
+            res.processRefund(1);
+            String afterRefund = res.generateDailyReport(session, 1, 1);
+            assertTrue(afterRefund.contains("Orders refunded: "), "Refunds Counted In Summary");
+
+            // Refunds keep numbering: the refunded order stays listed and later orders keep their numbers
+            res.processItemCode('H', 1);
+            String paid = res.processPayment(50.00f);
+            int number = Integer.parseInt(paid.substring(paid.indexOf('#') + 1, paid.indexOf("</h3>")));
+            res.processItemCode('F', 1);
+            res.processPayment(50.00f);
+            assertTrue(res.processRefund(number).contains("Refund processed"), "Refund By Receipt Number");
+            assertTrue(res.processRefund(number).contains("already refunded"), "Second Refund Rejected");
+            assertTrue(res.processRefund(number + 100).contains("not found"), "Unknown Order Refund Rejected");
+            String refundedPage = res.generateDailyReport(session, number, 1);
+            assertTrue(refundedPage.contains("Order #" + number + "</strong> <em>(Refunded)</em>"), "Refunded Order Marked In Report");
+            String nextPage = res.generateDailyReport(session, number + 1, 1);
+            assertTrue(nextPage.contains("Order #" + (number + 1) + "<") && nextPage.contains("Fish and Chips")
+                && !nextPage.contains("(Refunded)"), "Later Order Keeps Its Number");
+
+
+            // Only today's orders are replayed into the daily report after a restart
+            res.close();
+            List<MenuItem> menu = new ArrayList<>();
+            menu.add(new MenuItem('N', "Nasi Lemak", 9.00f));
+            Order old = new Order(1);
+            old.addItem(0, 1);
+            try (OrderJournal journal = new OrderJournal(dir.resolve("journal"), false)) {
+                journal.replay(new CountingListener());
+                long yesterday = System.currentTimeMillis() - 24L * 60 * 60 * 1000;
+                journal.appendPayment(number + 2, 5000, old, menu, yesterday);
+            }
+            res = new Restaurant(dir);
+            res.getAuthService().login("manager01", "mgr123");
+            session.setUser(res.getAuthService().getCurrentUser());
+            String reopened = res.generateDailyReport(session, 1, 100);
+            assertTrue(reopened.contains("Order #" + (number + 1) + "<") && !reopened.contains("Order #" + (number + 2) + "<")
+                && reopened.contains("Orders billed: " + (number + 1) + "<"), "Earlier Days Left Out Of Daily Report");
+            res.processItemCode('N', 1);
+            assertTrue(res.processPayment(50.00f).contains("#" + (number + 3) + "<"), "Numbering Continues After Earlier Days");
         } catch (Exception e) {
             System.out.println("FAIL: Exception in Report Generation: " + e.getMessage());
             testsFailed++;
+        } finally {
+            res.close();
+            deleteTree(dir);
+        }
+
+        // A till left running past midnight starts the next day's report empty
+        Path overnight = Files.createTempDirectory("overnight");
+        LocalDate night = LocalDate.of(2026, 3, 1);
+        SteppedClock clock = new SteppedClock(night.atTime(23, 59).atZone(ZoneId.systemDefault()).toInstant());
+        Restaurant till = new Restaurant(overnight, new ReceiptWriter(overnight), clock);
+        try {
+            till.getAuthService().login("manager01", "mgr123");
+            till.processItemCode('N', 1);
+            till.processPayment(50.00f);
+            assertTrue(till.generateDailyReport().contains("Orders billed: 1<"), "Order Counted Before Midnight");
+
+            clock.advance(Duration.ofMinutes(2));
+            String morning = till.generateDailyReport();
+            assertTrue(morning.contains("No orders processed yet.") && morning.contains("Orders billed: 0<")
+                && !morning.contains("Nasi Lemak") && morning.contains("Grand total: RM 0.00<"), "Report Starts Empty After Midnight");
+            assertTrue(till.processRefund(1).contains("not found"), "Yesterday's Order Not Refunded Today");
+            till.processItemCode('C', 1);
+            assertTrue(till.processPayment(50.00f).contains("#2<"), "Numbering Carries On Past Midnight");
+            String next = till.generateDailyReport();
+            assertTrue(next.contains("Order #2<") && !next.contains("Order #1<") && next.contains("Orders billed: 1<")
+                && next.contains("Chicken Rice") && !next.contains("Nasi Lemak"), "New Day Holds Only Its Own Orders");
+            assertTrue(Files.exists(overnight.resolve("rollups").resolve(night + ".roll")), "Finished Day Rolled Up");
+            Path journal = overnight.resolve("journal");
+            assertTrue(Files.exists(journal.resolve("checkpoint")) && segmentCount(journal) == 1, "Finished Day's Journal Retired");
+
+            // Reopened on a later day, numbering carries on from the checkpoint alone
+            till.close();
+            clock.advance(Duration.ofDays(1));
+            till = new Restaurant(overnight, new ReceiptWriter(overnight), clock);
+            till.getAuthService().login("manager01", "mgr123");
+            assertTrue(till.generateDailyReport().contains("Orders billed: 0<"), "Reopened Day Starts Empty");
+            assertEqual(1L, segmentCount(journal), "Journal Retired On Reopening");
+            till.processItemCode('H', 1);
+            assertTrue(till.processPayment(50.00f).contains("#3<"), "Numbering Continues From Checkpoint");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Midnight Rollover: " + e.getMessage());
+            testsFailed++;
+        } finally {
+            till.close();
+            deleteTree(overnight);
+        }
+    }
+
+    private static long segmentCount(Path journal) throws IOException {
+        try (Stream<Path> files = Files.list(journal)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    // A clock that only moves when told to
+    private static class SteppedClock extends Clock {
+        private Instant now;
+
+        SteppedClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration step) {
+            now = now.plus(step);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
         }
     }
     
+    private static void testSalesRollups() throws Exception {
+        System.out.println("\n[Module: Sales History Rollups]");
+        Path dir = Files.createTempDirectory("rollups");
+        try {
+            List<MenuItem> items = new ArrayList<>();
+            items.add(new MenuItem('N', "Nasi Lemak", 9.00f));
+            items.add(new MenuItem('C', "Chicken Rice", 8.00f));
+            MenuSnapshot menu = new MenuSnapshot(1, items);
+            Order two = new Order(menu);
+            two.addItem(0, 2);
+            two.calculateTotals();
+            Order mixed = new Order(menu);
+            mixed.addItem(0, 1);
+            mixed.addItem(1, 1);
+            mixed.calculateTotals();
+
+            ZoneId utc = ZoneId.of("UTC");
+            LocalDate monday = LocalDate.of(2026, 1, 5);
+            long mondayNoon = monday.atTime(12, 0).atZone(utc).toInstant().toEpochMilli();
+            long tuesdayNoon = mondayNoon + 24L * 60 * 60 * 1000;
+
+            SalesRollups rollups = new SalesRollups(dir, utc);
+            rollups.recordPayment(mondayNoon, two);
+            rollups.recordPayment(mondayNoon + 1000, mixed);
+            assertTrue(!rollups.isRolledUp(monday), "Open Day Held In Memory");
+            rollups.recordPayment(tuesdayNoon, mixed);
+            assertTrue(rollups.isRolledUp(monday), "Day Rolled Up When The Next Starts");
+            rollups.recordRefund(tuesdayNoon + 1000, two);
+
+            SalesRollups.Summary both = rollups.query(monday, monday.plusDays(1), null);
+            assertEqual(3L, both.getOrders(), "Orders Summed Across Days");
+            assertEqual(1L, both.getRefunds(), "Refunds Counted");
+            assertEqual(1700L + 1700L, both.getSubtotalCents(), "Subtotal Net Of Refunds");
+            assertEqual(2L, both.getItems().get(1).getQuantity(), "Item Quantity Net Of Refunds");
+            assertEqual(2, both.getPeriods().size(), "One Line Per Day");
+            assertEqual(-100L, both.getPeriods().get(1).getRevenueCents(), "Refund Counts On The Day Given");
+
+            SalesRollups.Summary chicken = rollups.query(monday, monday.plusDays(1), "C");
+            assertTrue(chicken.getItems().size() == 1 && chicken.getItems().get(0).getQuantity() == 2, "Query Filtered To One Item");
+            SalesRollups.Summary lower = rollups.query(monday, monday.plusDays(1), "c");
+            assertTrue(lower.getItems().size() == 1 && lower.getItems().get(0).getQuantity() == 2, "Query Filter Ignores Case");
+
+            // Reopened: the closed day comes from its file and replayed orders for it are ignored
+            rollups.rollUpBefore(monday.plusDays(2));
+            SalesRollups reopened = new SalesRollups(dir, utc);
+            reopened.recordPayment(mondayNoon, two);
+            SalesRollups.Summary fromDisk = reopened.query(monday.minusDays(40), monday.plusDays(20), null);
+            assertEqual(3L, fromDisk.getOrders(), "Rollups Read Back From Disk");
+            assertEqual(1800L + 1700L + 1700L - 1800L, fromDisk.getSubtotalCents(), "Replayed Day Not Counted Twice");
+            assertEqual("2026-01", fromDisk.getPeriods().get(0).getKey(), "Long Ranges Grouped By Month");
+        } finally {
+            deleteTree(dir);
+        }
+
+        Restaurant res = new Restaurant();
+        Session office = res.getSessions().create();
+        office.setUser(res.getAuthService().authenticate("manager01", "mgr123"));
+        Session till = res.getSessions().create();
+        till.setUser(res.getAuthService().authenticate("cashier01", "cash123"));
+        try {
+            boolean denied = false;
+            try {
+                res.generateHistoricalReport(till, LocalDate.now(), LocalDate.now(), null);
+            } catch (UnauthorizedException e) {
+                denied = true;
+            }
+            assertTrue(denied, "Cashier Denied Sales History");
+            String before = res.generateHistoricalReport(office, LocalDate.now(), LocalDate.now(), null);
+            res.processItemCode(till, "N", 1);
+            res.processPaymentCents(till, 100000);
+            String after = res.generateHistoricalReport(office, LocalDate.now(), LocalDate.now(), null);
+            int billedBefore = Integer.parseInt(before.replaceAll("(?s).*Orders billed: (\\d+).*", "$1"));
+            assertTrue(after.contains("SALES HISTORY") && after.contains("Orders billed: " + (billedBefore + 1) + "<"), "Today's Sales In History");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Sales History: " + e.getMessage());
+            testsFailed++;
+        }
+    }
+
     private static void testAuditLogRecording() {
         System.out.println("\n[Module: Audit Log System]");
         Restaurant res = new Restaurant();
@@ -289,6 +1037,58 @@ public class AllTests {
                 }
             }
             assertTrue(found, "Audit Log Recorded Price Change");
+
+            // In-memory retention keeps only the newest entries
+            User manager = res.getAuthService().getCurrentUser();
+            AuditLog window = new AuditLog(16, null, 1024, false);
+            for (int i = 0; i < 40; i++) window.record(manager, "Entry " + i);
+            List<String> kept = window.viewLog();
+            assertEqual(16, kept.size(), "Audit Retention Window Size");
+            assertTrue(kept.get(0).endsWith("Entry 24") && kept.get(15).endsWith("Entry 39"), "Audit Keeps Newest Entries");
+
+            // File sink rolls over by size without dropping entries
+            Path dir = Files.createTempDirectory("audit");
+            AuditLog rotating = new AuditLog(16, dir, 512, false);
+            for (int i = 0; i < 100; i++) rotating.record(manager, "Rotated entry " + i);
+            rotating.close();
+            List<Path> files = new ArrayList<>();
+            Files.list(dir).forEach(files::add);
+            int lines = 0;
+            for (Path f : files) {
+                lines += Files.readAllLines(f).size();
+            }
+            assertTrue(files.size() > 1, "Audit Files Rotate By Size");
+            assertEqual(100, lines, "Audit Sink Writes Every Entry");
+
+            // Structured entries: filter by user and action, page with a cursor, survive a restart
+            User cashier = new User("cashier01", "", Role.CASHIER, "EMP001");
+            AuditLog structured = new AuditLog(1024, dir, 1 << 20, false);
+            for (int i = 1; i <= 30; i++) {
+                structured.record(i % 3 == 0 ? manager : cashier, i % 3 == 0 ? AuditAction.REFUND : AuditAction.ORDER,
+                    i, i * 100L, "Entry " + i);
+            }
+            structured.flush();
+            AuditLog.Page refunds = structured.query("manager01", AuditAction.REFUND, Long.MIN_VALUE, Long.MAX_VALUE, -1, 4);
+            assertEqual(4, refunds.getEntries().size(), "Audit Query Page Size");
+            assertEqual(30, refunds.getEntries().get(0).getOrderNumber(), "Audit Query Newest First");
+            assertEqual(3000L, refunds.getEntries().get(0).getAmountCents(), "Audit Entry Keeps Amount");
+            AuditLog.Page older = structured.query("manager01", AuditAction.REFUND, Long.MIN_VALUE, Long.MAX_VALUE, refunds.getNextCursor(), 4);
+            assertEqual(18, older.getEntries().get(0).getOrderNumber(), "Audit Cursor Continues Paging");
+            AuditLog.Page cashierOrders = structured.query("cashier01", null, Long.MIN_VALUE, Long.MAX_VALUE, -1, 100);
+            assertEqual(20, cashierOrders.getEntries().size(), "Audit Query By User");
+            assertEqual("EMP001", cashierOrders.getEntries().get(0).getEmployeeId(), "Audit Entry Keeps Employee Id");
+            long now = System.currentTimeMillis();
+            assertEqual(0, structured.query(null, null, now + 60_000, Long.MAX_VALUE, -1, 10).getEntries().size(), "Audit Query By Time Range");
+            structured.close();
+
+            AuditLog reopened = new AuditLog(1024, dir, 1 << 20, false);
+            assertEqual(10, reopened.query("manager01", AuditAction.REFUND, Long.MIN_VALUE, Long.MAX_VALUE, -1, 100).getEntries().size(), "Audit Entries Reloaded On Restart");
+            reopened.close();
+
+            files.clear();
+            Files.list(dir).forEach(files::add);
+            for (Path f : files) Files.delete(f);
+            Files.delete(dir);
             
         } catch (Exception e) {
             System.out.println("FAIL: Exception in Audit Log: " + e.getMessage());
@@ -296,6 +1096,36 @@ public class AllTests {
         }
     }
 
+    private static void testMetrics() {
+        System.out.println("\n[Module: Metrics]");
+        Metrics metrics = new Metrics();
+        LatencyHistogram timer = metrics.timer("test_seconds", "step=\"a\"", "A test timer.");
+        assertTrue(timer == metrics.timer("test_seconds", "step=\"a\"", "A test timer."), "Timer Registered Once");
+        timer.record(2_000_000);
+        metrics.gauge("test_size", "", "A test gauge.", () -> 42);
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE test_seconds summary"), "Summary Type Line");
+        assertTrue(text.contains("test_seconds_count{step=\"a\"} 1"), "Summary Count Line");
+        assertTrue(text.contains("test_seconds{step=\"a\",quantile=\"0.5\"} 0.002"), "Quantile In Seconds");
+        assertTrue(text.contains("test_size 42\n"), "Gauge Line");
+
+        Restaurant res = new Restaurant();
+        User cashier = res.getAuthService().authenticate("cashier01", "cash123");
+        try {
+            res.processBatchOrder(cashier, new String[] {"N"}, new int[] {1}, 10000);
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Metrics: " + e.getMessage());
+            testsFailed++;
+        }
+        out.setLength(0);
+        res.getMetrics().writeTo(out);
+        text = out.toString();
+        assertTrue(text.contains("foodregistry_payment_step_seconds_count{step=\"audit\"} 1"), "Payment Step Timed");
+        assertTrue(text.contains("foodregistry_order_history_size "), "History Size Exposed");
+    }
+
     private static void testManagerPrivileges() {
         System.out.println("\n[Module: Manager Specific Operations]");
         Restaurant res = new Restaurant();
@@ -318,9 +1148,10 @@ public class AllTests {
         try {
             // Need a transaction first
             res.processItemCode('F', 1);
-            res.processPayment(50.00f);
+            String paid = res.processPayment(50.00f);
+            int number = Integer.parseInt(paid.substring(paid.indexOf('#') + 1, paid.indexOf("</h3>")));
             
-            String refundResult = res.processRefund(1); // Refund 1st order
+            String refundResult = res.processRefund(number); // Refund that order
             assertTrue(refundResult.contains("Refund processed"), "Refund Execution");
             
         } catch (Exception e) {
@@ -328,4 +1159,282 @@ public class AllTests {
              testsFailed++;
         }
     }
+
+    private static void testMenuSnapshots() {
+        System.out.println("\n[Module: Versioned Menu Snapshots]");
+        Restaurant res = new Restaurant();
+        Session till = res.getSessions().create();
+        till.setUser(res.getAuthService().authenticate("cashier01", "cash123"));
+        Session office = res.getSessions().create();
+        office.setUser(res.getAuthService().authenticate("manager01", "mgr123"));
+
+        try {
+            MenuSnapshot before = res.getMenu();
+            long oldPrice = before.get(before.find('N')).getPriceCents();
+            res.processItemCode(till, "N", 1);
+            res.modifyMenuPriceCents(office, "N", oldPrice + 100);
+
+            MenuSnapshot after = res.getMenu();
+            assertEqual(before.getVersion() + 1, after.getVersion(), "Price Change Publishes New Version");
+            assertEqual(oldPrice, before.get(before.find('N')).getPriceCents(), "Old Snapshot Unchanged");
+            assertEqual(oldPrice + 100, after.get(after.find('N')).getPriceCents(), "New Snapshot Has New Price");
+
+            // The open order keeps the prices it was started with
+            res.processItemCode(till, "N", 1);
+            String receipt = res.processPaymentCents(till, 100000);
+            assertTrue(receipt.contains("[RM " + Money.format(oldPrice) + "]"), "Open Order Keeps Pinned Price");
+
+            // The next order is priced against the new version
+            res.processItemCode(till, "N", 1);
+            assertTrue(res.getCurrentOrderDisplay(till).contains("RM " + Money.format(oldPrice + 100)), "Next Order Uses New Price");
+
+            assertTrue(res.modifyMenuPriceCents(office, "N", oldPrice), "Price Change Reports Item Found");
+            MenuSnapshot current = res.getMenu();
+            assertTrue(!res.modifyMenuPriceCents(office, "NOPE", 100) && res.getMenu() == current, "Unknown Code Reported And Changes Nothing");
+            int outOfRange = 0;
+            for (long price : new long[] {-1, MenuItem.MAX_PRICE_CENTS + 1}) {
+                try {
+                    res.modifyMenuPriceCents(office, "N", price);
+                } catch (IllegalArgumentException e) {
+                    outOfRange++;
+                }
+            }
+            assertTrue(outOfRange == 2 && res.getMenu() == current, "Price Outside Catalogue Range Rejected");
+        } catch (Exception e) {
+            System.out.println("FAIL: Exception in Menu Snapshots: " + e.getMessage());
+            testsFailed++;
+        }
+    }
+
+    private static void testMenuCatalogImport() throws Exception {
+        System.out.println("\n[Module: Menu Catalogue Import]");
+        byte[] csv = ("\uFEFFcode,name,price\n"
+            + "NL2,\"Nasi Lemak, Special\",12.50\r\n"
+            + "\n"
+            + "Q, \"The \"\"Big\"\" One\" , 7\n"
+            + "CR-L,Chicken Rice Large,9.9\n").getBytes(StandardCharsets.UTF_8);
+        MenuCatalog.Result good = MenuCatalog.parse(csv, csv.length);
+        assertTrue(good.isValid(), "Valid Catalogue Accepted");
+        assertEqual(3, good.getItems().size(), "Header And Blank Lines Skipped");
+        assertEqual("Nasi Lemak, Special", good.getItems().get(0).getName(), "Quoted Name Keeps Comma");
+        assertEqual("The \"Big\" One", good.getItems().get(1).getName(), "Doubled Quotes Unescaped");
+        assertEqual(990L, good.getItems().get(2).getPriceCents(), "Price Parsed To Cents");
+
+        // The declared length is only checked against the limit; the buffer follows what arrives
+        byte[] body = MenuCatalog.read(new ByteArrayInputStream(csv), 60L * 1024 * 1024);
+        assertTrue(Arrays.equals(csv, body), "Body Read Whatever Length Declared");
+
+        byte[] bad = ("A,Apple,1.00\n"
+            + "B,Banana\n"
+            + "C,\"Cherry,2.00\n"
+            + "D,Date,1.234\n"
+            + "a,Apricot,3.00\n"
+            + "E F,Egg,1.00\n").getBytes(StandardCharsets.UTF_8);
+        MenuCatalog.Result rejected = MenuCatalog.parse(bad, bad.length);
+        assertTrue(!rejected.isValid() && rejected.getErrorCount() == 5, "Every Bad Line Reported");
+        assertTrue(rejected.getErrors().get(0).startsWith("Line 2: expected 3 fields"), "Missing Field Reported With Line");
+        assertTrue(rejected.getErrors().get(1).startsWith("Line 3: unterminated quote"), "Unterminated Quote Reported");
+        assertTrue(rejected.getErrors().get(2).startsWith("Line 4: price"), "Third Decimal Rejected");
+        assertTrue(rejected.getErrors().get(3).startsWith("Line 6: code"), "Bad Code Rejected");
+        assertTrue(rejected.getErrors().get(4).equals("Line 5: duplicate code a (first on line 1)"), "Duplicate Code Ignoring Case");
+
+        Path dir = Files.createTempDirectory("catalogue");
+        Restaurant res = new Restaurant(dir);
+        try {
+            Session till = res.getSessions().create();
+            till.setUser(res.getAuthService().authenticate("cashier01", "cash123"));
+            Session office = res.getSessions().create();
+            office.setUser(res.getAuthService().authenticate("manager01", "mgr123"));
+            boolean denied = false;
+            try {
+                res.importMenu(till.getUser(), csv, csv.length);
+            } catch (UnauthorizedException e) {
+                denied = true;
+            }
+            assertTrue(denied, "Cashier Denied Menu Import");
+
+            MenuSnapshot before = res.getMenu();
+            res.importMenu(office.getUser(), bad, bad.length);
+            assertTrue(res.getMenu() == before, "Rejected Catalogue Changes Nothing");
+
+            // An order started on the old menu is billed and reported at its prices
+            res.processItemCode(till, "N", 2);
+            byte[] fresh = ("N,Nasi Lemak,10.00\nQ,\"Kopi, Ais\",3.00\n").getBytes(StandardCharsets.UTF_8);
+            assertTrue(res.importMenu(office.getUser(), fresh, fresh.length).isValid(), "Catalogue Imported");
+            assertEqual(before.getVersion() + 1, res.getMenu().getVersion(), "Import Publishes New Version");
+            assertEqual(2, res.getMenu().size(), "Import Replaces Whole Menu");
+            res.processPaymentCents(till, 100000);
+            res.processItemCode(till, "N", 1);
+            res.processItemCode(till, "Q", 1);
+            res.processPaymentCents(till, 100000);
+            String report = res.generateDailyReport(office);
+            assertTrue(report.contains("(N) [RM 10.00] Nasi Lemak x 3 = RM 28.00"), "Report Merges Sales Across Imports");
+            assertTrue(report.contains("Kopi, Ais x 1"), "Imported Item Sold");
+
+            Restaurant reopened = new Restaurant(dir);
+            assertTrue(reopened.getMenu().get(1).getName().equals("Kopi, Ais"), "Quoted Name Saved And Reloaded");
+            reopened.close();
+
+            // Names are shown escaped wherever the pages render them
+            byte[] markup = ("X,\"<b>Teh & \"\"Kopi\"\"</b>\",2.00\n").getBytes(StandardCharsets.UTF_8);
+            assertTrue(res.importMenu(office.getUser(), markup, markup.length).isValid(), "Name With Markup Imported");
+            String escaped = "&lt;b&gt;Teh &amp; &quot;Kopi&quot;&lt;/b&gt;";
+            res.processItemCode(till, "X", 1);
+            String bill = res.getCurrentOrderDisplay(till);
+            String receipt = res.processPaymentCents(till, 1000);
+            String page = res.getMenuDisplay() + bill + receipt + res.generateDailyReport(office);
+            assertTrue(page.contains(escaped) && !page.contains("<b>Teh"), "Imported Names Escaped In Pages");
+
+            // A catalogue that can't be saved isn't published
+            MenuSnapshot saved = res.getMenu();
+            Path blocker = Files.createDirectory(dir.resolve("menu.txt.tmp"));
+            byte[] unsaved = "U,Ulam,4.00\n".getBytes(StandardCharsets.UTF_8);
+            boolean failed = false;
+            try {
+                res.importMenu(office.getUser(), unsaved, unsaved.length);
+            } catch (IOException e) {
+                failed = true;
+            }
+            Files.delete(blocker);
+            assertTrue(failed && res.getMenu() == saved, "Unsaved Import Fails And Changes Nothing");
+        } finally {
+            res.close();
+            deleteTree(dir);
+        }
+    }
+
+    private static void testOutletRegistry() throws Exception {
+        System.out.println("\n[Module: Outlet Registry]");
+        Path root = Files.createTempDirectory("outlets");
+        Files.createDirectories(root.resolve("north"));
+        Files.createDirectories(root.resolve("south"));
+        OutletRegistry registry = new OutletRegistry(root, 1, 600, 1, (id, r) -> t -> { });
+        try {
+            assertTrue(registry.acquire("east") == null, "Unknown Outlet Not Found");
+            assertTrue(registry.acquire("..") == null, "Outlet Id Cannot Leave Root");
+
+            OutletRegistry.Outlet north = registry.acquire("north");
+            Restaurant northRestaurant = north.getRestaurant();
+            assertTrue(northRestaurant != null && north.getHandler() != null, "Outlet Opened On First Request");
+            assertTrue(Files.exists(root.resolve("north").resolve("menu.txt")), "Outlet Keeps Its Own Data Directory");
+            assertTrue(registry.acquire("north") == north && registry.isBusy(north), "Outlet Over Its In-Flight Limit Is Busy");
+            registry.release(north);
+            registry.release(north);
+
+            Session till = northRestaurant.getSessions().create();
+            till.setUser(northRestaurant.getAuthService().authenticate("cashier01", "cash123"));
+            northRestaurant.processItemCode(till, "N", 1);
+            assertTrue(northRestaurant.processPaymentCents(till, 100000).contains("Receipt Order: #1<"), "Outlet Numbers Its Own Receipts");
+
+            // Over the limit the least recently used idle outlet is closed
+            OutletRegistry.Outlet south = registry.acquire("south");
+            assertEqual(1, registry.getOpenCount(), "Idle Outlet Closed Over Limit");
+            assertTrue(south.getRestaurant().getSessions().get(till.getId()) == null, "Outlets Share No Sessions");
+
+            // ...but never one with a request in flight
+            OutletRegistry.Outlet reopened = registry.acquire("north");
+            assertEqual(2, registry.getOpenCount(), "Outlet In Use Not Closed");
+            Restaurant northAgain = reopened.getRestaurant();
+            assertTrue(northAgain != northRestaurant, "Closed Outlet Reopened");
+            Session next = northAgain.getSessions().create();
+            next.setUser(northAgain.getAuthService().authenticate("cashier01", "cash123"));
+            northAgain.processItemCode(next, "N", 1);
+            assertTrue(northAgain.processPaymentCents(next, 100000).contains("Receipt Order: #2<"), "Reopened Outlet Recovers Its Journal");
+            registry.release(reopened);
+            registry.release(south);
+        } finally {
+            registry.close();
+            deleteTree(root);
+        }
+    }
+
+    private static void testPageTemplate() throws Exception {
+        System.out.println("\n[Module: Page Templates]");
+        Path file = Files.createTempFile("page", ".html");
+        try {
+            Files.writeString(file, "<p>{{GREETING}}, {{NAME}}</p><script>'{{' + 'MENU}}'</script>", StandardCharsets.UTF_8);
+            PageTemplate page = new PageTemplate(file);
+            PageTemplate.SlotWriter slots = (slot, out) -> {
+                if ("GREETING".equals(slot)) out.append("Selamat pagi");
+                else if ("NAME".equals(slot)) out.append("Zoë ").append(42).append(' ').append("\uD83C\uDF5C");
+            };
+            assertEqual(2, page.getSlots().length, "Template Slots Parsed");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            page.render(out, slots);
+            assertEqual("<p>Selamat pagi, Zoë 42 \uD83C\uDF5C</p><script>'{{' + 'MENU}}'</script>",
+                out.toString(StandardCharsets.UTF_8), "Template Rendered With UTF-8 Slots");
+
+            // Same mtime: cached; new mtime: reparsed
+            FileTime stamp = Files.getLastModifiedTime(file);
+            Files.writeString(file, "<b>{{NAME}}</b>", StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, stamp);
+            assertEqual(2, page.getSlots().length, "Template Cached While Unmodified");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(stamp.toMillis() + 5000));
+            out.reset();
+            page.render(out, slots);
+            assertEqual("<b>Zoë 42 \uD83C\uDF5C</b>", out.toString(StandardCharsets.UTF_8), "Template Reloaded On Change");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void testStaticAssetCache() throws Exception {
+        System.out.println("\n[Module: Static Asset Cache]");
+        Path dir = Files.createTempDirectory("assets");
+        Path css = dir.resolve("site.css");
+        try {
+            StringBuilder rules = new StringBuilder();
+            for (int i = 0; i < 200; i++) rules.append(".item-").append(i).append(" { margin: 0; padding: 4px; }\n");
+            Files.writeString(css, rules, StandardCharsets.UTF_8);
+            StaticAssets assets = new StaticAssets(dir, 60);
+
+            StaticAssets.Asset first = assets.get("site.css");
+            assertTrue(first == assets.get("site.css"), "Asset Served From Cache");
+            assertTrue(first.getContentType().startsWith("text/css"), "Asset Content Type");
+            assertTrue(first.hasGzip() && first.getBody(true).length < first.getBody(false).length, "Gzip Variant Precomputed");
+            assertTrue(!first.getEtag(true).equals(first.getEtag(false)), "Gzip Variant Has Own ETag");
+
+            Files.writeString(css, rules.append("body { color: red; }\n"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(css, FileTime.fromMillis(Files.getLastModifiedTime(css).toMillis() + 5000));
+            StaticAssets.Asset changed = assets.get("site.css");
+            assertTrue(changed != first && !changed.getEtag(false).equals(first.getEtag(false)), "Asset Reloaded On Change");
+        } finally {
+            Files.deleteIfExists(css);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void testFormParser() throws Exception {
+        System.out.println("\n[Module: Form Body Parser]");
+        FormParser parser = new FormParser(8192);
+        byte[] body = "action=add&code=N&code=C%2B&name=Zo%C3%AB+Tan&note=100%25&bad=%zz&empty=&flag"
+            .getBytes(StandardCharsets.US_ASCII);
+        FormData form = parser.parse(new ByteArrayInputStream(body), body.length);
+        assertEqual("add", form.get("action"), "Form Field Decoded");
+        assertEqual("N", form.get("code"), "Repeated Key Returns First Value");
+        assertEqual(2, form.getAll("code").size(), "Repeated Key Keeps All Values");
+        assertEqual("C+", form.getAll("code").get(1), "Escaped Plus Decoded");
+        assertEqual("Zoë Tan", form.get("name"), "UTF-8 Percent Escapes Decoded");
+        assertEqual("100%", form.get("note"), "Escaped Percent Decoded");
+        assertEqual("%zz", form.get("bad"), "Malformed Escape Kept Literally");
+        assertEqual("", form.get("empty"), "Empty Value Kept");
+        assertEqual("", form.get("flag"), "Key Without Value Kept");
+
+        StringBuilder big = new StringBuilder("action=report");
+        while (big.length() < 6000) big.append("&pad=xxxxxxxxxx");
+        byte[] bigBody = big.toString().getBytes(StandardCharsets.US_ASCII);
+        FormData bigForm = parser.parse(new ByteArrayInputStream(bigBody), -1);
+        assertEqual("report", bigForm.get("action"), "Body Larger Than Pooled Buffer");
+
+        byte[] tooBig = new byte[9000];
+        java.util.Arrays.fill(tooBig, (byte) 'a');
+        boolean rejected = false;
+        try {
+            parser.parse(new ByteArrayInputStream(tooBig), -1);
+        } catch (RequestTooLargeException e) {
+            rejected = true;
+        }
+        assertTrue(rejected, "Body Over Limit Rejected");
+    }
 }
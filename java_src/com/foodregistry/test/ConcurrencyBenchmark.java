@@ -0,0 +1,112 @@
+package com.foodregistry.test;
+
+import com.foodregistry.Main;
+import com.foodregistry.ServerExecutors;
+import com.sun.net.httpserver.HttpServer;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares request throughput of the server's executor modes at 1, 8 and 64 concurrent tills.
+ * Each till logs in, then loops add -> add -> checkout. On a JDK without virtual
+ * threads the VIRTUAL rows are the pool fallback and are printed as VIRTUAL*. Writes receipts to the working
+ * directory, so run it from a scratch copy of menu.txt/users.txt/index.html.
+ *
+ * Usage: java com.foodregistry.test.ConcurrencyBenchmark [secondsPerRun]
+ */
+public class ConcurrencyBenchmark {
+    private static final int[] CLIENTS = {1, 8, 64};
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = ServerExecutors.configuredThreads();
+
+        System.out.println("==========================================");
+        System.out.println("   Executor Throughput Comparison         ");
+        System.out.printf("   %ds per run, pool size %d%n", seconds, threads);
+        System.out.println("==========================================");
+        System.out.printf("%-8s %8s %12s%n", "Mode", "Clients", "Requests/s");
+        boolean fallback = !ServerExecutors.virtualThreadsAvailable();
+
+        for (ServerExecutors.Mode mode : ServerExecutors.Mode.values()) {
+            for (int clients : CLIENTS) {
+                Executor executor = ServerExecutors.create(mode, threads);
+                HttpServer server = Main.startServer(0, executor);
+                try {
+                    double rate = run(server.getAddress().getPort(), clients, seconds);
+                    String label = mode == ServerExecutors.Mode.VIRTUAL && fallback ? "VIRTUAL*" : mode.name();
+                    System.out.printf("%-8s %8d %12.1f%n", label, clients, rate);
+                } finally {
+                    server.stop(0);
+                    if (executor instanceof ExecutorService) {
+                        ((ExecutorService) executor).shutdownNow();
+                    }
+                }
+            }
+        }
+        if (fallback) {
+            System.out.println("* No virtual threads on this JDK (" + Runtime.version() + "): ran as POOL");
+        }
+    }
+
+    private static double run(int port, int clients, int seconds) throws Exception {
+        String base = "http://localhost:" + port;
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder completed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int c = 0; c < clients; c++) {
+            Thread worker = new Thread(() -> {
+                HttpClient http = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+                try {
+                    post(http, base, "action=login&username=cashier01&password=cash123");
+                    ready.countDown();
+                    start.await();
+                    while (running.get()) {
+                        post(http, base, "action=add&code=N&quantity=1");
+                        post(http, base, "action=add&code=C&quantity=2");
+                        post(http, base, "action=checkout&amount=100");
+                        completed.add(3);
+                    }
+                } catch (Exception e) {
+                    ready.countDown();
+                    System.out.println("Client error: " + e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        long elapsed = System.nanoTime() - begin;
+        for (Thread worker : workers) worker.join();
+        return completed.sum() / (elapsed / 1e9);
+    }
+
+    private static void post(HttpClient http, String base, String form) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/action"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " for " + form);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.foodregistry.test;
+
+import com.foodregistry.*;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the old float + String.format money formatting with the long-cents
+ * Money formatter on the receipt and daily report paths.
+ *
+ * Usage: java com.foodregistry.test.MoneyFormatBenchmark [iterations]
+ */
+public class MoneyFormatBenchmark {
+    private static long sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        List<MenuItem> menu = new ArrayList<>();
+        menu.add(new MenuItem('N', "Nasi Lemak", 9.00f));
+        menu.add(new MenuItem('C', "Chicken Rice", 8.00f));
+        menu.add(new MenuItem('M', "Masala Dosa", 8.50f));
+        menu.add(new MenuItem('H', "Hamburger", 5.00f));
+        menu.add(new MenuItem('F', "Fish and Chips", 12.00f));
+        Order order = new Order(new MenuSnapshot(1, menu));
+        order.addItem(0, 2);
+        order.addItem(2, 1);
+        order.addItem(4, 3);
+        order.calculateTotals(menu);
+        Receipt receipt = new Receipt(order, 42, 10000);
+        ReceiptRenderer renderer = new TextReceiptRenderer();
+        ReceiptBuffer buffer = new ReceiptBuffer();
+
+        System.out.println("==========================================");
+        System.out.println("   Money Formatting Benchmark             ");
+        System.out.println("==========================================");
+
+        report("Single amount  String.format", iterations * 10, () -> String.format("%.2f", 1234.5f).length());
+        report("Single amount  Money.append", iterations * 10, () -> {
+            StringBuilder sb = new StringBuilder(16);
+            return Money.append(sb, 123450).length();
+        });
+        report("Text receipt   printf (before)", iterations, () -> legacyReceipt(order, menu, 100.00f, 42).length());
+        report("Text receipt   Money (after)", iterations, () -> {
+            renderer.render(receipt, buffer.reset());
+            return buffer.length();
+        });
+        report("Report summary String.format (before)", iterations, () -> legacySummary(order, menu).length());
+        report("Report summary Money (after)", iterations, () -> summary(order, menu).length());
+    }
+
+    private interface Op {
+        int run();
+    }
+
+    private static void report(String name, int iterations, Op op) {
+        for (int i = 0; i < iterations / 4; i++) sink += op.run(); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += op.run();
+        double nsPerOp = (System.nanoTime() - start) / (double) iterations;
+        System.out.printf("%-40s %10.1f ns/op%n", name, nsPerOp);
+    }
+
+    // The receipt as it was rendered with float amounts and printf
+    private static String legacyReceipt(Order order, List<MenuItem> menu, float amountPaid, int orderNumber) {
+        StringWriter buffer = new StringWriter(512);
+        PrintWriter out = new PrintWriter(buffer);
+        out.println("= * === * === * === * === * ==");
+        out.println("H & S Restaurant Meal Billing System");
+        out.println("= * === * === * === * === * ==");
+        out.println();
+        out.println("Order: #" + orderNumber);
+        out.println();
+        out.println("Items in bill:");
+        for (int i = 0; i < menu.size(); i++) {
+            if (order.getQuantity(i) > 0) {
+                out.printf("(%c) [RM %.2f] %s × %d = RM %.2f%n", menu.get(i).getCode(), menu.get(i).getPrice(),
+                        menu.get(i).getName(), order.getQuantity(i), menu.get(i).getPrice() * order.getQuantity(i));
+            }
+        }
+        float change = amountPaid - order.getTotal();
+        StringBuilder sep = new StringBuilder();
+        for (int i = 0; i < 36; i++) sep.append("=");
+        out.println(sep);
+        out.printf(" Subtotal: RM %.2f%n", order.getSubtotal());
+        out.printf(" SST charge 10%%: RM %.2f%n", order.getSST());
+        out.printf(" Grand total: RM %.2f%n", order.getTotal());
+        out.println(sep);
+        out.printf("Amount received: RM %.2f%n", amountPaid);
+        if (change > 0) out.printf(" Change given: RM %.2f%n", change);
+        out.println(sep);
+        out.println("Thank you and have a nice day ahead!");
+        out.flush();
+        return buffer.toString();
+    }
+
+    private static String legacySummary(Order sales, List<MenuItem> menu) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < menu.size(); i++) {
+            if (sales.getQuantity(i) > 0) {
+                sb.append(String.format("(%c) [RM %.2f] %s x %d = RM %.2f<br>",
+                    menu.get(i).getCode(), menu.get(i).getPrice(), menu.get(i).getName(),
+                    sales.getQuantity(i), menu.get(i).getPrice() * sales.getQuantity(i)));
+            }
+        }
+        sb.append(String.format("Subtotal: RM %.2f<br>", sales.getSubtotal()));
+        sb.append(String.format("SST charge 10%%: RM %.2f<br>", sales.getSST()));
+        sb.append(String.format("Grand total: RM %.2f<br>", sales.getTotal()));
+        return sb.toString();
+    }
+
+    private static String summary(Order sales, List<MenuItem> menu) {
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = sales.nextLine(0); i >= 0; i = sales.nextLine(i + 1)) {
+            MenuItem item = menu.get(i);
+            int qty = sales.getQuantity(i);
+            sb.append('(').append(item.getSku()).append(") [RM ");
+            Money.append(sb, item.getPriceCents()).append("] ").append(item.getName()).append(" x ").append(qty).append(" = RM ");
+            Money.append(sb, item.getPriceCents() * qty).append("<br>");
+        }
+        Money.append(sb.append("Subtotal: RM "), sales.getSubtotalCents()).append("<br>");
+        Money.append(sb.append("SST charge 10%: RM "), sales.getSSTCents()).append("<br>");
+        Money.append(sb.append("Grand total: RM "), sales.getTotalCents()).append("<br>");
+        return sb.toString();
+    }
+}
@@ -36,6 +36,7 @@ public class RealSystemTests {
         } catch (Exception e) {
             System.out.println("CRITICAL ERROR IN TEST SUITE: " + e.getMessage());
             e.printStackTrace();
+            testsFailed++;
         }
 
         System.out.println("\n==================================================");
@@ -48,6 +49,7 @@ public class RealSystemTests {
             System.out.println("\n[SUCCESS] ALL REALISTIC SCENARIOS PASSED.");
         } else {
             System.out.println("\n[FAILURE] SOME TESTS FAILED.");
+            System.exit(1);
         }
     }
 
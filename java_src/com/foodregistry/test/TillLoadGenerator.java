@@ -0,0 +1,320 @@
+package com.foodregistry.test;
+
+import com.foodregistry.LatencyHistogram;
+import com.foodregistry.Main;
+import com.foodregistry.MenuCatalog;
+import com.foodregistry.MenuItem;
+import com.foodregistry.Money;
+import com.foodregistry.ServerExecutors;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives the till workflow over HTTP to size hardware for an outlet.
+ *
+ * Each simulated till logs in a cashier (and a manager for the manager
+ * actions), then repeatedly adds one to three items and checks out. A
+ * configurable share of steps is instead a manager action: report, refund
+ * (of one of the till's own orders), modify_price (to the menu.txt price) or
+ * view_log.
+ *
+ * Tills run open-loop: each sends at a fixed rate, and a request's latency is
+ * measured from when it was due, not from when it was sent. A stalled server
+ * therefore shows up in every request that queued behind the stall instead of
+ * in just one (coordinated omission).
+ *
+ * By default the server is started in this process on a free port; it writes
+ * receipts and journals to the working directory, so run it from a scratch
+ * copy of menu.txt/users.txt/index.html/login.html. Use --port to drive a
+ * server already running on localhost.
+ *
+ * Usage: java com.foodregistry.test.TillLoadGenerator [--tills 8] [--rate 20]
+ *        [--seconds 30] [--warmup 5] [--port N]
+ *        [--mix report=2,refund=2,modify_price=1,view_log=1]
+ *
+ * --rate is requests per second per till; --mix gives percentages of steps.
+ */
+public class TillLoadGenerator {
+    private static final String[] ACTIONS = {"login", "add", "checkout", "report", "refund", "modify_price", "view_log"};
+    private static final String[] MANAGER_ACTIONS = {"report", "refund", "modify_price", "view_log"};
+    private static final Pattern ORDER_NUMBER = Pattern.compile("Receipt Order: #(\\d+)");
+
+    private static final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private static final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private static final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private static volatile boolean measuring;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int tills = Integer.parseInt(options.getOrDefault("tills", "8"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "20"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int[] mix = parseMix(options.getOrDefault("mix", "report=2,refund=2,modify_price=1,view_log=1"));
+        List<String[]> menu = readMenu();
+
+        for (String action : ACTIONS) {
+            latencies.put(action, new LatencyHistogram());
+            errors.put(action, new LongAdder());
+        }
+
+        HttpServer server = null;
+        Executor executor = null;
+        int port;
+        if (options.containsKey("port")) {
+            port = Integer.parseInt(options.get("port"));
+        } else {
+            executor = ServerExecutors.create(ServerExecutors.configuredMode(), ServerExecutors.configuredThreads());
+            server = Main.startServer(0, executor);
+            port = server.getAddress().getPort();
+        }
+
+        System.out.println("==========================================");
+        System.out.println("   Till Load Generator                    ");
+        System.out.printf("   %d tills x %.1f req/s, %ds (+%ds warm-up)%n", tills, rate, seconds, warmup);
+        System.out.printf("   Mix: report %d%%, refund %d%%, modify_price %d%%, view_log %d%%%n", mix[0], mix[1], mix[2], mix[3]);
+        System.out.println("==========================================");
+
+        try {
+            long elapsed = run("http://localhost:" + port, tills, rate, seconds, warmup, mix, menu);
+            printResults(elapsed);
+        } finally {
+            if (server != null) server.stop(0);
+            if (executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdownNow();
+            }
+        }
+    }
+
+    private static long run(String base, int tills, double rate, int seconds, int warmup,
+                            int[] mix, List<String[]> menu) throws Exception {
+        long interval = (long) (1_000_000_000L / rate);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch ready = new CountDownLatch(tills);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int i = 0; i < tills; i++) {
+            Thread worker = new Thread(() -> {
+                Till till = new Till(base, mix, menu);
+                try {
+                    till.login();
+                } catch (Exception e) {
+                    System.out.println("Login failed: " + e);
+                    return;
+                } finally {
+                    ready.countDown();
+                }
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Stagger tills across one interval so they don't fire in lockstep
+                long due = System.nanoTime() + ThreadLocalRandom.current().nextLong(interval);
+                while (running.get()) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    till.step(due);
+                    due += interval;
+                }
+            }, "till-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        ready.await();
+        start.countDown();
+        Thread.sleep(warmup * 1000L);
+        measuring = true;
+        long begin = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+        long elapsed = System.nanoTime() - begin;
+        running.set(false);
+        for (Thread worker : workers) worker.join();
+        return elapsed;
+    }
+
+    private static void printResults(long elapsedNanos) {
+        double secs = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.printf("%-13s %9s %7s %9s %9s %9s %9s %9s%n",
+            "Action", "Requests", "Errors", "Req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (String action : ACTIONS) {
+            LatencyHistogram h = latencies.get(action);
+            long n = h.getCount();
+            total += n;
+            if (n == 0) continue;
+            System.out.printf("%-13s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f%n", action, n, errors.get(action).sum(), n / secs,
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6,
+                h.getValueAtPercentile(99.9) / 1e6, h.getMaxNanos() / 1e6);
+        }
+        System.out.printf("%nThroughput: %.1f req/s over %.1fs%n", total / secs, secs);
+        System.out.printf("Service time only (not corrected for queueing): p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms%n",
+            serviceTimes.getValueAtPercentile(50) / 1e6, serviceTimes.getValueAtPercentile(99) / 1e6,
+            serviceTimes.getValueAtPercentile(99.9) / 1e6);
+    }
+
+    /**
+     * One till: a cashier session ringing up orders and a manager session for
+     * the occasional manager action.
+     */
+    private static class Till {
+        private final String base;
+        private final int[] mix;
+        private final List<String[]> menu;
+        private final HttpClient cashier = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        private final HttpClient manager = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        private final ArrayDeque<String> billed = new ArrayDeque<>();
+        private int itemsWanted = 1;
+        private int itemsAdded;
+
+        Till(String base, int[] mix, List<String[]> menu) {
+            this.base = base;
+            this.mix = mix;
+            this.menu = menu;
+        }
+
+        void login() throws Exception {
+            long due = System.nanoTime();
+            send("login", cashier, "action=login&username=cashier01&password=cash123", due);
+            send("login", manager, "action=login&username=manager01&password=mgr123", due);
+        }
+
+        void step(long due) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int roll = random.nextInt(100);
+            for (int i = 0; i < MANAGER_ACTIONS.length; i++) {
+                if (roll < mix[i]) {
+                    managerAction(MANAGER_ACTIONS[i], due);
+                    return;
+                }
+                roll -= mix[i];
+            }
+
+            if (itemsAdded < itemsWanted) {
+                String[] item = menu.get(random.nextInt(menu.size()));
+                send("add", cashier, "action=add&code=" + item[0] + "&quantity=" + (1 + random.nextInt(3)), due);
+                itemsAdded++;
+            } else {
+                String page = send("checkout", cashier, "action=checkout&amount=500", due);
+                Matcher m = page == null ? null : ORDER_NUMBER.matcher(page);
+                if (m != null && m.find()) {
+                    billed.add(m.group(1));
+                } else if (page != null && measuring) {
+                    errors.get("checkout").increment();
+                }
+                itemsWanted = 1 + random.nextInt(3);
+                itemsAdded = 0;
+            }
+        }
+
+        private void managerAction(String action, long due) {
+            switch (action) {
+                case "report":
+                    send(action, manager, "action=report", due);
+                    break;
+                case "refund":
+                    String order = billed.poll();
+                    if (order == null) {
+                        // Nothing billed yet on this till; report instead of refunding nothing
+                        send("report", manager, "action=report", due);
+                    } else {
+                        send(action, manager, "action=refund&order_number=" + order, due);
+                    }
+                    break;
+                case "modify_price":
+                    String[] item = menu.get(ThreadLocalRandom.current().nextInt(menu.size()));
+                    send(action, manager, "action=modify_price&code=" + item[0] + "&price=" + item[1], due);
+                    break;
+                default:
+                    send(action, manager, "action=view_log", due);
+                    break;
+            }
+        }
+
+        // Posts the form and records its latency from the due time; returns the page, or null on failure
+        private String send(String action, HttpClient http, String form, long due) {
+            long sent = System.nanoTime();
+            String body = null;
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/action"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form))
+                        .build();
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) body = response.body();
+            } catch (IOException e) {
+                // Counted as an error below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long done = System.nanoTime();
+            if (measuring) {
+                latencies.get(action).record(done - due);
+                serviceTimes.record(done - sent);
+                if (body == null) errors.get(action).increment();
+            }
+            return body;
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    // Percentages for report, refund, modify_price and view_log, in MANAGER_ACTIONS order
+    private static int[] parseMix(String spec) {
+        int[] mix = new int[MANAGER_ACTIONS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) continue;
+            for (int i = 0; i < MANAGER_ACTIONS.length; i++) {
+                if (MANAGER_ACTIONS[i].equals(kv[0].trim())) mix[i] = Integer.parseInt(kv[1].trim());
+            }
+        }
+        int sum = 0;
+        for (int share : mix) sum += share;
+        if (sum > 100) throw new IllegalArgumentException("Mix adds up to more than 100%: " + spec);
+        return mix;
+    }
+
+    // Code and price of each menu.txt entry
+    private static List<String[]> readMenu() throws IOException {
+        // Parsed as the server reads it, so quoted names with commas don't shift the fields
+        List<String[]> menu = new ArrayList<>();
+        for (MenuItem item : MenuCatalog.parse(Paths.get("menu.txt")).getItems()) {
+            menu.add(new String[] {item.getSku(), Money.format(item.getPriceCents())});
+        }
+        if (menu.isEmpty()) throw new IOException("No items in menu.txt");
+        return menu;
+    }
+}